@@ -0,0 +1,52 @@
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global download speed cap shared by every connection.
+ * A token bucket kept as a single "time the bucket is paid up to" value (virtual scheduling):
+ * taking bytes is one CAS that moves that time forward, so hundreds of transfers can share it
+ * without a lock. Whoever runs ahead of the rate is told how long to pause, a short burst is free.
+ */
+public final class BandwidthLimiter {
+
+    //how far ahead of the rate a transfer may get before it has to wait
+    private static final long BURST_NANOS = 250_000_000L;
+
+    private volatile long bytesPerSecond;
+    private final AtomicLong paidUntilNanos = new AtomicLong(System.nanoTime());
+
+    //0 means unlimited
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        long rate = Math.max(0, bytesPerSecond);
+        if (rate != this.bytesPerSecond) {
+            this.bytesPerSecond = rate;
+            //debt taken on at the old rate does not carry over
+            paidUntilNanos.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * Takes bytes from the bucket and returns how many nanoseconds the caller should pause
+     * before moving more data, 0 if it is within the rate.
+     */
+    public long take(long bytes) {
+        long rate = bytesPerSecond;
+        if (rate <= 0) {
+            return 0;
+        }
+        long cost = (long) (bytes * 1_000_000_000.0 / rate);
+        while (true) {
+            long now = System.nanoTime();
+            long paidUntil = paidUntilNanos.get();
+            //an idle bucket does not save up more than the burst
+            long next = Math.max(paidUntil, now) + cost;
+            if (paidUntilNanos.compareAndSet(paidUntil, next)) {
+                return Math.max(0, next - now - BURST_NANOS);
+            }
+        }
+    }
+}
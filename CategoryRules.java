@@ -0,0 +1,702 @@
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * User-extensible classification rules, stored as text next to the custom categories file.
+ * Each line maps a category to one or more conditions that must all hold, first match wins:
+ * <pre>
+ * Documents = ext:pdf,doc,docx
+ * Partial   = glob:*.part
+ * Camera    = regex:^img_\d+\.jpg$ ; size:&gt;1MB
+ * Stale     = age:&gt;365d
+ * </pre>
+ * The file is compiled into a hash lookup on the lowercased extension and one lazily built DFA over
+ * all glob patterns. Every regex keeps its own pattern; a literal each of its matches must contain is
+ * looked up by a second DFA, so only regexes whose literal occurs in the name are run. Classifying a
+ * file costs roughly one map lookup plus two passes over its name however many rules exist.
+ * Edits are picked up without a restart.
+ */
+public final class CategoryRules {
+
+    public static final String DEFAULT_CATEGORY = "Other";
+    //categories that always exist, in the order they are shown
+    public static final List<String> PREDEFINED_CATEGORIES = List.of(
+            "Compressed", "Documents", "Images", "Music", "Programs", "Video", DEFAULT_CATEGORY);
+
+    //the mapping FileSortify always shipped with, written out when no rules file exists yet
+    private static final String[] DEFAULT_RULES = {
+            "Compressed = ext:zip,rar,7z,tar,gz",
+            "Documents = ext:pdf,doc,docx,txt,xls,xlsx,ppt,pptx,odt,ods,odp",
+            "Music = ext:mp3,wav,flac,m4a,aac,ogg",
+            "Programs = ext:exe,msi,dmg,deb,rpm",
+            "Video = ext:mp4,avi,mkv,mov,wmv,flv,webm",
+            "Images = ext:jpg,jpeg,png,gif,bmp,tiff,svg",
+    };
+
+    //the rules file is stat'ed at most this often to detect edits
+    private static final long RELOAD_CHECK_NANOS = 1_000_000_000L;
+
+    private final Path rulesFile;
+    private volatile Compiled compiled;
+    private volatile long lastModified = Long.MIN_VALUE;
+    private volatile long nextCheckNanos;
+    private volatile List<String> errors = List.of();
+
+    public CategoryRules(Path rulesFile) {
+        this.rulesFile = rulesFile;
+        this.compiled = compile(Arrays.asList(DEFAULT_RULES), new ArrayList<>());
+        reloadIfChanged(true);
+    }
+
+    //rules built from a list of lines, without a backing file
+    public CategoryRules(List<String> lines) {
+        this.rulesFile = null;
+        List<String> problems = new ArrayList<>();
+        this.compiled = compile(lines, problems);
+        this.errors = List.copyOf(problems);
+    }
+
+    public static List<String> defaultRules() {
+        return Arrays.asList(DEFAULT_RULES);
+    }
+
+    public static boolean isPredefined(String category) {
+        return PREDEFINED_CATEGORIES.contains(category);
+    }
+
+    /**
+     * Returns the category for a file. Size and last modified time (epoch millis) may be -1 when
+     * unknown, in which case rules with size or age conditions do not match.
+     */
+    public String classify(String fileName, long size, long lastModifiedMillis) {
+        reloadIfChanged(false);
+        return compiled.classify(fileName.toLowerCase(Locale.ROOT), extensionOf(fileName), size, lastModifiedMillis);
+    }
+
+    //classifies by extension alone, e.g. for an extension detected from file content
+    public String classifyExtension(String extension, long size, long lastModifiedMillis) {
+        reloadIfChanged(false);
+        return compiled.classify(null, extension.toLowerCase(Locale.ROOT), size, lastModifiedMillis);
+    }
+
+    //all categories rules can produce, predefined ones first
+    public List<String> getCategories() {
+        reloadIfChanged(false);
+        return compiled.categories;
+    }
+
+    public int getRuleCount() {
+        return compiled.rules.length;
+    }
+
+    //problems found in the rules file on the last load, one message per skipped line
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    //lowercased text after the last dot, "" for names without one
+    public static String extensionOf(String fileName) {
+        int index = fileName.lastIndexOf('.');
+        if (index > 0 && index < fileName.length() - 1) {
+            return fileName.substring(index + 1).toLowerCase(Locale.ROOT);
+        }
+        return "";
+    }
+
+    /**
+     * Recompiles the rules if the file changed since the last load.
+     * A missing file is created with the default rules; a broken line is skipped and reported.
+     */
+    public void reloadIfChanged(boolean force) {
+        if (rulesFile == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!force && now < nextCheckNanos) {
+            return;
+        }
+        nextCheckNanos = now + RELOAD_CHECK_NANOS;
+        synchronized (this) {
+            try {
+                long modified;
+                try {
+                    modified = Files.getLastModifiedTime(rulesFile).toMillis();
+                } catch (NoSuchFileException ex) {
+                    writeDefaults();
+                    modified = Files.getLastModifiedTime(rulesFile).toMillis();
+                }
+                if (modified == lastModified) {
+                    return;
+                }
+                List<String> lines = new ArrayList<>();
+                try (BufferedReader reader = Files.newBufferedReader(rulesFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                }
+                List<String> problems = new ArrayList<>();
+                compiled = compile(lines, problems);
+                errors = List.copyOf(problems);
+                lastModified = modified;
+                for (String problem : problems) {
+                    System.err.println("Category rules: " + problem);
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void writeDefaults() throws IOException {
+        Files.createDirectories(rulesFile.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(rulesFile, StandardCharsets.UTF_8)) {
+            writer.write("# FileSortify category rules, first matching line wins. Conditions on one line must all match.");
+            writer.newLine();
+            writer.write("# ext:a,b  glob:*.part  regex:^img_\\d+  size:>100MB | size:1KB..2GB  age:<7d | age:>365d");
+            writer.newLine();
+            for (String rule : DEFAULT_RULES) {
+                writer.write(rule);
+                writer.newLine();
+            }
+        }
+    }
+
+    // --- Compilation ---
+
+    private static Compiled compile(List<String> lines, List<String> problems) {
+        List<Rule> rules = new ArrayList<>();
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                rules.add(parseRule(line, rules.size()));
+            } catch (IllegalArgumentException ex) {
+                problems.add("line " + lineNumber + ": " + ex.getMessage());
+            }
+        }
+        return new Compiled(rules.toArray(new Rule[0]));
+    }
+
+    private static Rule parseRule(String line, int index) {
+        int equals = line.indexOf('=');
+        if (equals <= 0) {
+            throw new IllegalArgumentException("expected '<category> = <conditions>'");
+        }
+        Rule rule = new Rule(index, line.substring(0, equals).trim());
+        for (String condition : line.substring(equals + 1).split(";")) {
+            condition = condition.trim();
+            int colon = condition.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("bad condition '" + condition + "'");
+            }
+            String type = condition.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = condition.substring(colon + 1).trim();
+            switch (type) {
+                case "ext":
+                    List<String> extensions = new ArrayList<>();
+                    for (String extension : value.split(",")) {
+                        extension = extension.trim().toLowerCase(Locale.ROOT);
+                        if (extension.startsWith(".")) {
+                            extension = extension.substring(1);
+                        }
+                        if (!extension.isEmpty()) {
+                            extensions.add(extension);
+                        }
+                    }
+                    rule.extensions = extensions.toArray(new String[0]);
+                    break;
+                case "glob":
+                    rule.glob = value.toLowerCase(Locale.ROOT);
+                    break;
+                case "regex":
+                    try {
+                        rule.regex = Pattern.compile(value, Pattern.CASE_INSENSITIVE);
+                    } catch (PatternSyntaxException ex) {
+                        throw new IllegalArgumentException("bad regex: " + ex.getDescription());
+                    }
+                    break;
+                case "size":
+                    long[] sizeRange = parseRange(value, CategoryRules::parseSize);
+                    rule.minSize = sizeRange[0];
+                    rule.maxSize = sizeRange[1];
+                    break;
+                case "age":
+                    long[] ageRange = parseRange(value, CategoryRules::parseAge);
+                    rule.minAgeMillis = ageRange[0];
+                    rule.maxAgeMillis = ageRange[1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown condition type '" + type + "'");
+            }
+        }
+        int nameConditions = (rule.extensions != null ? 1 : 0) + (rule.glob != null ? 1 : 0) + (rule.regex != null ? 1 : 0);
+        if (nameConditions > 1) {
+            throw new IllegalArgumentException("use only one of ext, glob or regex per rule");
+        }
+        return rule;
+    }
+
+    private interface UnitParser {
+        long parse(String text);
+    }
+
+    //"&gt;X", "&lt;X" or "X..Y", returned as an inclusive [min, max]
+    private static long[] parseRange(String value, UnitParser parser) {
+        if (value.startsWith(">")) {
+            return new long[]{parser.parse(value.substring(1)) + 1, Long.MAX_VALUE};
+        }
+        if (value.startsWith("<")) {
+            return new long[]{0, parser.parse(value.substring(1)) - 1};
+        }
+        int dots = value.indexOf("..");
+        if (dots < 0) {
+            throw new IllegalArgumentException("expected >X, <X or X..Y but got '" + value + "'");
+        }
+        return new long[]{parser.parse(value.substring(0, dots)), parser.parse(value.substring(dots + 2))};
+    }
+
+    private static long parseSize(String text) {
+        return parseWithUnit(text, new String[]{"tb", "gb", "mb", "kb", "b"},
+                new long[]{1L << 40, 1L << 30, 1L << 20, 1L << 10, 1});
+    }
+
+    private static long parseAge(String text) {
+        return parseWithUnit(text, new String[]{"w", "d", "h", "m", "s"},
+                new long[]{7L * 24 * 3600 * 1000, 24L * 3600 * 1000, 3600L * 1000, 60L * 1000, 1000});
+    }
+
+    private static long parseWithUnit(String text, String[] units, long[] multipliers) {
+        String value = text.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < units.length; i++) {
+            if (value.endsWith(units[i])) {
+                String number = value.substring(0, value.length() - units[i].length()).trim();
+                try {
+                    return (long) (Double.parseDouble(number) * multipliers[i]);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("bad number '" + text + "'");
+                }
+            }
+        }
+        throw new IllegalArgumentException("missing unit in '" + text + "'");
+    }
+
+    private static final class Rule {
+        final int index;
+        final String category;
+        String[] extensions;
+        String glob;
+        Pattern regex;
+        long minSize = -1;
+        long maxSize = Long.MAX_VALUE;
+        long minAgeMillis = -1;
+        long maxAgeMillis = Long.MAX_VALUE;
+
+        Rule(int index, String category) {
+            this.index = index;
+            this.category = category;
+        }
+
+        boolean hasNameCondition() {
+            return extensions != null || glob != null || regex != null;
+        }
+
+        //size and age conditions, name conditions are matched by the compiled indexes
+        boolean acceptsAttributes(long size, long lastModifiedMillis, long now) {
+            if (minSize >= 0 || maxSize != Long.MAX_VALUE) {
+                if (size < 0 || size < minSize || size > maxSize) {
+                    return false;
+                }
+            }
+            if (minAgeMillis >= 0 || maxAgeMillis != Long.MAX_VALUE) {
+                if (lastModifiedMillis < 0) {
+                    return false;
+                }
+                long age = now - lastModifiedMillis;
+                return age >= minAgeMillis && age <= maxAgeMillis;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Immutable matcher built from one version of the rules file.
+     * Rule indexes double as priorities, the lowest matching index wins.
+     */
+    private static final class Compiled {
+        private static final int[] NONE = new int[0];
+
+        final Rule[] rules;
+        final List<String> categories;
+        final Map<String, int[]> byExtension = new HashMap<>();
+        final int[] attributeOnly;
+        final GlobAutomaton globs;
+        //regexes without a required literal, tried for every name, in priority order
+        final int[] unfilteredRegexes;
+        //"*literal*" of every other regex, the regexes whose literal occurs in the name
+        final GlobAutomaton regexLiterals;
+
+        Compiled(Rule[] rules) {
+            this.rules = rules;
+            Map<String, List<Integer>> extensionLists = new HashMap<>();
+            List<Integer> attributeOnlyList = new ArrayList<>();
+            List<String> globPatterns = new ArrayList<>();
+            List<Integer> globIndexes = new ArrayList<>();
+            List<Integer> unfilteredList = new ArrayList<>();
+            List<String> literalPatterns = new ArrayList<>();
+            List<Integer> literalIndexes = new ArrayList<>();
+            List<String> categoryList = new ArrayList<>(PREDEFINED_CATEGORIES);
+            for (Rule rule : rules) {
+                if (!categoryList.contains(rule.category)) {
+                    categoryList.add(rule.category);
+                }
+                if (rule.extensions != null) {
+                    for (String extension : rule.extensions) {
+                        extensionLists.computeIfAbsent(extension, k -> new ArrayList<>()).add(rule.index);
+                    }
+                } else if (rule.glob != null) {
+                    globPatterns.add(rule.glob);
+                    globIndexes.add(rule.index);
+                } else if (rule.regex != null) {
+                    String literal = requiredLiteral(rule.regex.pattern());
+                    if (literal == null) {
+                        unfilteredList.add(rule.index);
+                    } else {
+                        literalPatterns.add("*" + literal + "*");
+                        literalIndexes.add(rule.index);
+                    }
+                } else {
+                    attributeOnlyList.add(rule.index);
+                }
+            }
+            extensionLists.forEach((extension, indexes) -> byExtension.put(extension, toArray(indexes)));
+            this.attributeOnly = toArray(attributeOnlyList);
+            this.categories = List.copyOf(categoryList);
+            this.globs = globPatterns.isEmpty() ? null : new GlobAutomaton(globPatterns, globIndexes);
+            this.unfilteredRegexes = toArray(unfilteredList);
+            this.regexLiterals = literalPatterns.isEmpty() ? null : new GlobAutomaton(literalPatterns, literalIndexes);
+        }
+
+        //lowerName may be null to classify by extension only
+        String classify(String lowerName, String extension, long size, long lastModifiedMillis) {
+            long now = System.currentTimeMillis();
+            int best = firstAccepted(byExtension.getOrDefault(extension, NONE), Integer.MAX_VALUE, size, lastModifiedMillis, now);
+            best = firstAccepted(attributeOnly, best, size, lastModifiedMillis, now);
+            if (lowerName != null) {
+                if (globs != null) {
+                    best = firstAccepted(globs.match(lowerName), best, size, lastModifiedMillis, now);
+                }
+                if (unfilteredRegexes.length > 0 || regexLiterals != null) {
+                    best = firstRegex(lowerName, best, size, lastModifiedMillis, now);
+                }
+            }
+            return best == Integer.MAX_VALUE ? DEFAULT_CATEGORY : rules[best].category;
+        }
+
+        //candidates are sorted by priority, so the first acceptable one is the best from this index
+        private int firstAccepted(int[] candidates, int best, long size, long lastModifiedMillis, long now) {
+            for (int index : candidates) {
+                if (index >= best) {
+                    break;
+                }
+                if (rules[index].acceptsAttributes(size, lastModifiedMillis, now)) {
+                    return index;
+                }
+            }
+            return best;
+        }
+
+        //runs the candidate regexes in priority order: the unfiltered ones and those whose literal occurs in the name
+        private int firstRegex(String lowerName, int best, long size, long lastModifiedMillis, long now) {
+            int[] filtered = regexLiterals != null ? regexLiterals.match(lowerName) : NONE;
+            int u = 0;
+            int f = 0;
+            while (u < unfilteredRegexes.length || f < filtered.length) {
+                int index = f >= filtered.length || (u < unfilteredRegexes.length && unfilteredRegexes[u] < filtered[f])
+                        ? unfilteredRegexes[u++] : filtered[f++];
+                if (index >= best) {
+                    break;
+                }
+                Rule rule = rules[index];
+                if (rule.acceptsAttributes(size, lastModifiedMillis, now) && rule.regex.matcher(lowerName).find()) {
+                    return index;
+                }
+            }
+            return best;
+        }
+
+        private static int[] toArray(List<Integer> values) {
+            int[] array = new int[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            return array;
+        }
+    }
+
+    /**
+     * The longest run of plain ASCII characters every match of regex must contain, lowercased,
+     * or null if none can be told safely. Only the top level is read: groups, classes, escapes and
+     * anything quantified end a run, and any top-level alternative or inline comment mode gives up.
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.contains("(?x") || regex.contains("\\Q") || regex.matches("(?s).*\\\\[xuc0-9pPNk].*")) {
+            return null;
+        }
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '|') {
+                return null;
+            }
+            if (c == '*' || c == '?' || c == '{') {
+                //the previous character may be absent
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                longest = longer(longest, run);
+                run.setLength(0);
+                i = c == '{' ? regex.indexOf('}', i) + 1 : i + 1;
+                if (i == 0) {
+                    return null;
+                }
+                continue;
+            }
+            if (c == '+') {
+                //the previous character is there at least once, what follows need not be next to it
+                longest = longer(longest, run);
+                run.setLength(0);
+                i++;
+                continue;
+            }
+            if (c == '(' || c == '[') {
+                longest = longer(longest, run);
+                run.setLength(0);
+                i = skipGroup(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+                continue;
+            }
+            char literal;
+            if (c == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(i + 1);
+                i += 2;
+                if (Character.isLetterOrDigit(escaped)) {
+                    //\d, \w, \b and friends
+                    longest = longer(longest, run);
+                    run.setLength(0);
+                    continue;
+                }
+                literal = escaped;
+            } else {
+                i++;
+                literal = c;
+            }
+            if (literal == '.' && c != '\\' || literal == '^' && c != '\\' || literal == '$' && c != '\\'
+                    || literal >= 128 || literal == '*' || literal == '?') {
+                longest = longer(longest, run);
+                run.setLength(0);
+                continue;
+            }
+            run.append(Character.toLowerCase(literal));
+        }
+        longest = longer(longest, run);
+        return longest.isEmpty() ? null : longest;
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        return run.length() > longest.length() ? run.toString() : longest;
+    }
+
+    //index just past the group or class starting at start, -1 if it is not closed
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+            } else if (c == '[') {
+                inClass = true;
+                //a ']' right after the opening bracket is a literal
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                } else if (i + 2 < regex.length() && regex.charAt(i + 1) == '^' && regex.charAt(i + 2) == ']') {
+                    i += 2;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * All glob patterns compiled into one NFA (one state per pattern position) whose DFA states are
+     * built lazily and memoized, so matching a name is a single pass over its characters.
+     * Supports '*' and '?'; everything else matches literally.
+     */
+    private static final class GlobAutomaton {
+        //DFA states memoized at most; past this new states are computed on the fly and not kept,
+        //bounding memory on odd inputs
+        private static final int MAX_DFA_STATES = 10_000;
+
+        private final char[][] patterns;
+        private final int[] ruleIndexes;
+        private final int[] offsets;
+        private final int[] stateToPattern;
+        private final int stateCount;
+        private final Map<BitSet, DfaState> dfaStates = new ConcurrentHashMap<>();
+        private final DfaState start;
+
+        //globs.get(i) belongs to the rule with index ruleIndexes.get(i)
+        GlobAutomaton(List<String> globs, List<Integer> ruleIndexes) {
+            patterns = new char[globs.size()][];
+            this.ruleIndexes = new int[globs.size()];
+            offsets = new int[globs.size()];
+            int states = 0;
+            for (int i = 0; i < globs.size(); i++) {
+                patterns[i] = globs.get(i).toCharArray();
+                this.ruleIndexes[i] = ruleIndexes.get(i);
+                offsets[i] = states;
+                states += patterns[i].length + 1;
+            }
+            stateCount = states;
+            stateToPattern = new int[stateCount];
+            for (int i = 0; i < patterns.length; i++) {
+                Arrays.fill(stateToPattern, offsets[i], offsets[i] + patterns[i].length + 1, i);
+            }
+            BitSet initial = new BitSet(stateCount);
+            for (int i = 0; i < patterns.length; i++) {
+                addWithClosure(initial, i, 0);
+            }
+            start = state(initial);
+        }
+
+        //rule indexes of every glob matching the whole name, in priority order
+        int[] match(String name) {
+            DfaState current = start;
+            for (int i = 0; i < name.length() && !current.dead; i++) {
+                current = current.next(name.charAt(i));
+            }
+            return current.accepting;
+        }
+
+        private DfaState state(BitSet states) {
+            DfaState existing = dfaStates.get(states);
+            if (existing != null) {
+                return existing;
+            }
+            if (dfaStates.size() >= MAX_DFA_STATES) {
+                return new DfaState(states, false);
+            }
+            DfaState created = new DfaState(states, true);
+            existing = dfaStates.putIfAbsent(states, created);
+            return existing != null ? existing : created;
+        }
+
+        private void addWithClosure(BitSet set, int pattern, int position) {
+            char[] glob = patterns[pattern];
+            while (true) {
+                set.set(offsets[pattern] + position);
+                if (position < glob.length && glob[position] == '*') {
+                    position++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private final class DfaState {
+            final BitSet states;
+            final boolean dead;
+            final int[] accepting;
+            //kept in dfaStates; only such states cache transitions, and only to each other
+            final boolean memoized;
+            //ASCII transitions in an array, anything else in a map; null for states that are not kept
+            final DfaState[] asciiNext;
+            final Map<Character, DfaState> otherNext;
+
+            DfaState(BitSet states, boolean memoized) {
+                this.states = states;
+                this.memoized = memoized;
+                this.asciiNext = memoized ? new DfaState[128] : null;
+                this.otherNext = memoized ? new ConcurrentHashMap<>() : null;
+                this.dead = states.isEmpty();
+                List<Integer> accepted = new ArrayList<>();
+                for (int i = 0; i < patterns.length; i++) {
+                    if (states.get(offsets[i] + patterns[i].length)) {
+                        accepted.add(ruleIndexes[i]);
+                    }
+                }
+                accepted.sort(null);
+                this.accepting = Compiled.toArray(accepted);
+            }
+
+            DfaState next(char c) {
+                DfaState cached = !memoized ? null : c < 128 ? asciiNext[c] : otherNext.get(c);
+                if (cached != null) {
+                    return cached;
+                }
+                BitSet nextStates = new BitSet(stateCount);
+                for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+                    int pattern = stateToPattern[state];
+                    char[] glob = patterns[pattern];
+                    int p = state - offsets[pattern];
+                    if (p == glob.length) {
+                        continue;
+                    }
+                    char g = glob[p];
+                    if (g == '*') {
+                        addWithClosure(nextStates, pattern, p);
+                    } else if (g == '?' || g == c) {
+                        addWithClosure(nextStates, pattern, p + 1);
+                    }
+                }
+                DfaState next = state(nextStates);
+                if (!memoized || !next.memoized) {
+                    return next;
+                }
+                if (c < 128) {
+                    asciiNext[c] = next;
+                } else {
+                    otherNext.put(c, next);
+                }
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Predicate;
+
+/**
+ * What to do when a sorted file's destination already exists.
+ * Existence is looked up in the batch's {@link DestinationNames}, so files without a conflict
+ * cost no extra I/O; only an actual conflict reads the existing file's size, date or content.
+ * Two files of one batch never replace each other: whichever comes second is renamed, or
+ * skipped by SKIP and by DEDUPE_IF_IDENTICAL when both are identical.
+ */
+public enum ConflictPolicy {
+    //keep the existing file, the source is not imported
+    SKIP("Skip"),
+    //replace the existing file
+    OVERWRITE("Overwrite"),
+    //replace the existing file only if the source was modified later
+    KEEP_NEWER("Keep the newer file"),
+    //replace the existing file only if the source is larger
+    KEEP_LARGER("Keep the larger file"),
+    //import under "name (1).ext", "name (2).ext", ...
+    RENAME("Rename with a counter"),
+    //skip the source if the existing file has the same content, otherwise rename it
+    DEDUPE_IF_IDENTICAL("Skip if identical, else rename");
+
+    private final String label;
+
+    ConflictPolicy(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+    /**
+     * Returns the path source should be written to, or null to skip it.
+     * size and lastModified are the source's; names holds the destination folders of the batch.
+     */
+    public Path resolve(Path source, long size, long lastModified, Path destination, DestinationNames names) {
+        if (names.claimIfFree(destination, source)) {
+            return destination;
+        }
+        Path claimedBy = names.claimedBy(destination);
+        if (claimedBy != null) {
+            //another file of this batch goes there
+            if (this == SKIP || (this == DEDUPE_IF_IDENTICAL && identical(source, claimedBy))) {
+                return null;
+            }
+            return rename(destination, candidate -> names.claimIfFree(candidate, source));
+        }
+        switch (this) {
+            case SKIP:
+                return null;
+            case OVERWRITE:
+                return replace(source, destination, names);
+            case KEEP_NEWER:
+            case KEEP_LARGER:
+                BasicFileAttributes existing;
+                try {
+                    existing = Files.readAttributes(destination, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException ex) {
+                    //removed since the folder was listed
+                    return replace(source, destination, names);
+                } catch (IOException ex) {
+                    return null;
+                }
+                boolean wins = this == KEEP_NEWER ? lastModified > existing.lastModifiedTime().toMillis() : size > existing.size();
+                return wins ? replace(source, destination, names) : null;
+            case DEDUPE_IF_IDENTICAL:
+                if (identical(source, destination)) {
+                    return null;
+                }
+                return rename(destination, candidate -> names.claimIfFree(candidate, source));
+            default:
+                return rename(destination, candidate -> names.claimIfFree(candidate, source));
+        }
+    }
+
+    //whether a file of the batch may take the place of an existing file; the other policies create destinations exclusively
+    public boolean replacesExisting() {
+        return this == OVERWRITE || this == KEEP_NEWER || this == KEEP_LARGER;
+    }
+
+    /**
+     * Resolves a task again after its destination, free when it was resolved, turned out to be
+     * taken when the file got there. The name counts as existing from now on; returns null to skip the file.
+     */
+    public ImportEngine.ImportTask resolveAgain(ImportEngine.ImportTask task, DestinationNames names) throws IOException {
+        names.release(task.getDestination(), true);
+        Path source = task.getSource();
+        Path target = task.getDestination().resolveSibling(source.getFileName().toString());
+        Path destination = resolve(source, task.getSize(), Files.getLastModifiedTime(source).toMillis(), target, names);
+        return destination != null ? task.resolvedTo(destination, task.getCategory()) : null;
+    }
+
+    /**
+     * "name (1).ext", "name (2).ext", ... : the first candidate claim accepts.
+     * claim must take the candidate and return true if it is free.
+     */
+    public static Path rename(Path destination, Predicate<Path> claim) {
+        String fileName = destination.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            Path candidate = destination.resolveSibling(stem + " (" + i + ")" + extension);
+            if (claim.test(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    //replaces the existing file unless another file of the batch got there first, then renames
+    private static Path replace(Path source, Path destination, DestinationNames names) {
+        if (names.claimExisting(destination, source)) {
+            return destination;
+        }
+        return rename(destination, candidate -> names.claimIfFree(candidate, source));
+    }
+
+    //same size and same bytes; false if either cannot be read
+    private static boolean identical(Path a, Path b) {
+        try {
+            return Files.size(a) == Files.size(b) && Files.mismatch(a, b) == -1;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects the real type of a file from its first bytes.
+ * Returns the canonical extension of a known format (e.g. "pdf", "mkv") so the result can be fed
+ * through the same extension to category mapping as the file name. Each thread reuses one small
+ * direct buffer and results are cached by path, size and modification time, so sorting the same
+ * files again never reads them twice. Safe to call from any number of threads.
+ */
+public final class ContentSniffer {
+
+    //enough for every signature below, tar keeps its magic at offset 257
+    public static final int SNIFF_BYTES = 512;
+    //the cache is dropped wholesale when it grows past this, cheaper than LRU bookkeeping per file
+    private static final int MAX_CACHE_ENTRIES = 500_000;
+    private static final String UNKNOWN = "";
+
+    //one direct buffer per worker thread, never reallocated
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(SNIFF_BYTES));
+
+    //fixed signatures, checked in order
+    private static final Magic[] MAGICS = {
+            new Magic(0, "pdf", 0x25, 0x50, 0x44, 0x46, 0x2D),                   // %PDF-
+            new Magic(0, "png", 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A),
+            new Magic(0, "jpg", 0xFF, 0xD8, 0xFF),
+            new Magic(0, "gif", 0x47, 0x49, 0x46, 0x38),                         // GIF8
+            new Magic(0, "tiff", 0x49, 0x49, 0x2A, 0x00),
+            new Magic(0, "tiff", 0x4D, 0x4D, 0x00, 0x2A),
+            new Magic(0, "7z", 0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C),
+            new Magic(0, "rar", 0x52, 0x61, 0x72, 0x21, 0x1A, 0x07),             // Rar!
+            new Magic(0, "gz", 0x1F, 0x8B),
+            new Magic(257, "tar", 0x75, 0x73, 0x74, 0x61, 0x72),                 // ustar
+            new Magic(0, "flac", 0x66, 0x4C, 0x61, 0x43),                        // fLaC
+            new Magic(0, "ogg", 0x4F, 0x67, 0x67, 0x53),                         // OggS
+            new Magic(0, "mp3", 0x49, 0x44, 0x33),                               // ID3
+            new Magic(0, "flv", 0x46, 0x4C, 0x56, 0x01),
+            new Magic(0, "wmv", 0x30, 0x26, 0xB2, 0x75, 0x8E, 0x66, 0xCF, 0x11), // ASF header
+            new Magic(0, "rpm", 0xED, 0xAB, 0xEE, 0xDB),
+            new Magic(0, "deb", 0x21, 0x3C, 0x61, 0x72, 0x63, 0x68, 0x3E, 0x0A, 0x64, 0x65, 0x62, 0x69, 0x61, 0x6E), // !<arch>\ndebian
+    };
+
+    private static final byte[] ZIP = {0x50, 0x4B, 0x03, 0x04};
+    private static final byte[] ODF_MIMETYPE = "mimetypeapplication/vnd.oasis.opendocument.".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EBML = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+    private static final byte[] WEBM = "webm".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RIFF = "RIFF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FTYP = "ftyp".getBytes(StandardCharsets.US_ASCII);
+    //two letters alone start plenty of text files, so the headers behind them are checked too
+    private static final byte[] MZ = "MZ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PE = {0x50, 0x45, 0x00, 0x00};
+    private static final byte[] BM = "BM".getBytes(StandardCharsets.US_ASCII);
+    //sizes of the known BMP info headers, from BITMAPCOREHEADER to BITMAPV5HEADER
+    private static final Set<Integer> BMP_INFO_SIZES = Set.of(12, 16, 40, 52, 56, 64, 108, 124);
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder filesRead = new LongAdder();
+
+    /**
+     * Returns the canonical extension for the content of file, or null if the format is not recognised.
+     * Size and modification time come from attributes the caller already has, so a cache hit costs no I/O.
+     */
+    public String sniffExtension(Path file, long size, long lastModified) {
+        String key = file.toString();
+        CacheEntry cached = cache.get(key);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            cacheHits.increment();
+            return cached.extension == UNKNOWN ? null : cached.extension;
+        }
+        String extension = read(file);
+        if (cache.size() >= MAX_CACHE_ENTRIES) {
+            cache.clear();
+        }
+        cache.put(key, new CacheEntry(size, lastModified, extension == null ? UNKNOWN : extension));
+        return extension;
+    }
+
+    public String sniffExtension(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return sniffExtension(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getFilesRead() {
+        return filesRead.sum();
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private String read(Path file) {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                //keep reading, small files may need more than one call on some filesystems
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        filesRead.increment();
+        buffer.flip();
+        return match(buffer, size);
+    }
+
+    //matches the header in buffer[0, limit) of a file of fileSize bytes against the known signatures
+    static String match(ByteBuffer header, long fileSize) {
+        if (startsWith(header, 0, ZIP)) {
+            //OpenDocument files store an uncompressed mimetype entry first
+            if (startsWith(header, 30, ODF_MIMETYPE)) {
+                int kind = 30 + ODF_MIMETYPE.length;
+                if (startsWith(header, kind, "text".getBytes(StandardCharsets.US_ASCII))) return "odt";
+                if (startsWith(header, kind, "spreadsheet".getBytes(StandardCharsets.US_ASCII))) return "ods";
+                if (startsWith(header, kind, "presentation".getBytes(StandardCharsets.US_ASCII))) return "odp";
+            }
+            return "zip";
+        }
+        if (startsWith(header, 0, EBML)) {
+            return indexOf(header, WEBM) >= 0 ? "webm" : "mkv";
+        }
+        if (startsWith(header, 0, RIFF) && header.limit() >= 12) {
+            String form = ascii(header, 8, 4);
+            if ("AVI ".equals(form)) return "avi";
+            if ("WAVE".equals(form)) return "wav";
+            return null;
+        }
+        if (startsWith(header, 4, FTYP) && header.limit() >= 12) {
+            String brand = ascii(header, 8, 4);
+            if (brand.startsWith("qt")) return "mov";
+            if (brand.startsWith("M4A")) return "m4a";
+            return "mp4";
+        }
+        for (Magic magic : MAGICS) {
+            if (startsWith(header, magic.offset, magic.bytes)) {
+                return magic.extension;
+            }
+        }
+        if (startsWith(header, 0, MZ) && header.limit() >= 64) {
+            //a Windows program: the DOS header points at the PE signature
+            int peOffset = littleEndianInt(header, 0x3C);
+            return peOffset >= 64 && startsWith(header, peOffset, PE) ? "exe" : null;
+        }
+        if (startsWith(header, 0, BM) && header.limit() >= 18) {
+            //declared file size, reserved zeros, pixel data behind the headers and inside the file
+            long declaredSize = littleEndianInt(header, 2) & 0xFFFFFFFFL;
+            long pixelOffset = littleEndianInt(header, 10) & 0xFFFFFFFFL;
+            int infoSize = littleEndianInt(header, 14);
+            boolean plausible = declaredSize <= fileSize && declaredSize > pixelOffset
+                    && littleEndianInt(header, 6) == 0
+                    && BMP_INFO_SIZES.contains(infoSize) && pixelOffset >= 14 + infoSize;
+            return plausible ? "bmp" : null;
+        }
+        //MPEG audio frame sync without an ID3 tag
+        if (header.limit() >= 2 && (header.get(0) & 0xFF) == 0xFF && (header.get(1) & 0xE6) == 0xE2) {
+            return "mp3";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix) {
+        if (buffer.limit() < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] needle) {
+        outer:
+        for (int i = 0; i <= buffer.limit() - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buffer.get(i + j) != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int littleEndianInt(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0xFF) | (buffer.get(offset + 1) & 0xFF) << 8
+                | (buffer.get(offset + 2) & 0xFF) << 16 | (buffer.get(offset + 3) & 0xFF) << 24;
+    }
+
+    private static String ascii(ByteBuffer buffer, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    private static final class Magic {
+        final int offset;
+        final String extension;
+        final byte[] bytes;
+
+        Magic(int offset, String extension, int... bytes) {
+            this.offset = offset;
+            this.extension = extension;
+            this.bytes = new byte[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                this.bytes[i] = (byte) bytes[i];
+            }
+        }
+    }
+
+    private static final class CacheEntry {
+        final long size;
+        final long lastModified;
+        final String extension;
+
+        CacheEntry(long size, long lastModified, String extension) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.extension = extension;
+        }
+    }
+}
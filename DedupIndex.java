@@ -0,0 +1,457 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent content-hash index of the files in the category folders.
+ * Files are grouped by size first, and only a file that shares its size with an indexed file is
+ * ever hashed, so importing files of unique sizes costs no extra reads. Hashes are SHA-256, read
+ * through one reusable direct buffer per thread; files are never mapped, so nothing keeps them
+ * open once hashed and they can be renamed or deleted right after a scan on every platform.
+ */
+public final class DedupIndex {
+
+    //what to do with a file whose content is already in the category folders
+    public enum Action {
+        IMPORT("Import anyway"),
+        SKIP("Skip duplicates"),
+        LINK("Hard link to existing copy");
+
+        private final String label;
+
+        Action(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final int FILE_MAGIC = 0x46534458; // FSDX
+    private static final int FILE_VERSION = 1;
+    private static final int READ_BUFFER = 1024 * 1024;
+    //longest a duplicate waits for its pending copy before checking that the index was not rebuilt
+    private static final long PENDING_WAIT_MILLIS = 1000;
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER));
+    private static final Metrics.Histogram LOAD_LATENCY = Metrics.histogram("dedup.load");
+    private static final Metrics.Histogram SAVE_LATENCY = Metrics.histogram("dedup.save");
+
+    private final Path indexFile;
+    private final Map<Long, Bucket> bySize = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+    private boolean loaded;
+
+    public DedupIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    //all indexed files of one size
+    private static final class Bucket {
+        final List<Entry> entries = new ArrayList<>();
+    }
+
+    private static final class Entry {
+        final Path path;
+        //changed under the bucket lock, read without it while hashing
+        volatile long lastModified;
+        volatile byte[] hash;
+        //set while the file is still being transferred, its content can be read from here meanwhile
+        volatile Path pendingSource;
+
+        Entry(Path path, long lastModified, byte[] hash) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    //a set of files with identical content, found by a duplicate scan
+    public static final class DuplicateGroup {
+        private final long size;
+        private final List<Path> files;
+
+        DuplicateGroup(long size, List<Path> files) {
+            this.size = size;
+            this.files = files;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public List<Path> getFiles() {
+            return files;
+        }
+
+        //bytes freed by keeping one copy
+        public long getReclaimableBytes() {
+            return size * (files.size() - 1);
+        }
+    }
+
+    /**
+     * Looks for an indexed file with the same content as source. If there is none, destination is
+     * registered as the holder of that content (pending until {@link #completed} or {@link #remove})
+     * and null is returned, otherwise the path of the existing copy is returned. A copy that is
+     * still being transferred is only returned once it has landed; if its transfer fails, the
+     * search goes on and source may become the holder itself.
+     */
+    public Path findOrRegister(Path source, Path destination, long size) throws IOException {
+        Bucket bucket = bySize.computeIfAbsent(size, k -> new Bucket());
+        byte[] sourceHash = null;
+        Set<Entry> compared = new HashSet<>();
+        //files are hashed outside the bucket lock and the results published under it, so a slow
+        //hash does not hold up other imports of the same size; entries added meanwhile are compared in the next round
+        while (true) {
+            List<Entry> uncompared = new ArrayList<>();
+            synchronized (bucket) {
+                for (Iterator<Entry> it = bucket.entries.iterator(); it.hasNext(); ) {
+                    Entry entry = it.next();
+                    if (entry.path.equals(destination)) {
+                        //the file is being replaced, its old content no longer counts
+                        it.remove();
+                        bucket.notifyAll();
+                    } else if (!compared.contains(entry)) {
+                        uncompared.add(entry);
+                    }
+                }
+                if (uncompared.isEmpty()) {
+                    Entry registered = new Entry(destination, -1, sourceHash);
+                    registered.pendingSource = source;
+                    bucket.entries.add(registered);
+                    dirty = true;
+                    return null;
+                }
+            }
+            if (sourceHash == null) {
+                sourceHash = hash(source, size);
+            }
+            for (Entry entry : uncompared) {
+                compared.add(entry);
+                Entry current = hashOf(entry, size);
+                synchronized (bucket) {
+                    if (!bucket.entries.contains(entry)) {
+                        continue;
+                    }
+                    if (current == null) {
+                        //indexed file vanished or changed behind our back
+                        bucket.entries.remove(entry);
+                        dirty = true;
+                        continue;
+                    }
+                    if (current.hash != entry.hash) {
+                        entry.hash = current.hash;
+                        entry.lastModified = current.lastModified;
+                        dirty = true;
+                    }
+                    if (Arrays.equals(sourceHash, current.hash)) {
+                        //a link to a half-written copy, or a source deleted next to one, would lose data
+                        try {
+                            while (entry.pendingSource != null && bucket.entries.contains(entry)) {
+                                if (bySize.get(size) != bucket) {
+                                    //rebuilt by a scan meanwhile, nobody reports to this bucket any more
+                                    return findOrRegister(source, destination, size);
+                                }
+                                bucket.wait(PENDING_WAIT_MILLIS);
+                            }
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted waiting for " + entry.path);
+                        }
+                        if (bucket.entries.contains(entry)) {
+                            return entry.path;
+                        }
+                        //its transfer failed, look further
+                    }
+                }
+            }
+        }
+    }
+
+    //marks a registered destination as fully written
+    public void completed(Path destination, long size) {
+        Bucket bucket = bySize.get(size);
+        if (bucket == null) {
+            return;
+        }
+        synchronized (bucket) {
+            for (Entry entry : bucket.entries) {
+                if (entry.path.equals(destination)) {
+                    entry.pendingSource = null;
+                    entry.lastModified = lastModifiedOrMinusOne(destination);
+                }
+            }
+            bucket.notifyAll();
+        }
+        dirty = true;
+    }
+
+    //forgets a path, e.g. after a failed transfer or a delete
+    public void remove(Path path, long size) {
+        Bucket bucket = bySize.get(size);
+        if (bucket == null) {
+            return;
+        }
+        synchronized (bucket) {
+            bucket.entries.removeIf(entry -> entry.path.equals(path));
+            bucket.notifyAll();
+        }
+        dirty = true;
+    }
+
+    public int size() {
+        int count = 0;
+        for (Bucket bucket : bySize.values()) {
+            synchronized (bucket) {
+                count += bucket.entries.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Scans a folder tree for files with identical content and rebuilds the index from it.
+     * Sizes are collected with one walk, then every size bucket with more than one file is hashed
+     * in parallel across all cores.
+     */
+    public List<DuplicateGroup> scan(Path root) throws IOException {
+        load();
+        Map<Long, List<Path>> filesBySize = new HashMap<>();
+        Map<Path, Long> modified = new HashMap<>();
+        Set<Object> seenFileKeys = new HashSet<>();
+        if (Files.isDirectory(root)) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    //hard links to an already seen file share its storage, they are not duplicates
+                    Object fileKey = attrs.fileKey();
+                    if (attrs.isRegularFile() && (fileKey == null || seenFileKeys.add(fileKey))) {
+                        filesBySize.computeIfAbsent(attrs.size(), k -> new ArrayList<>()).add(file);
+                        modified.put(file, attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        Map<Long, Bucket> rebuilt = new ConcurrentHashMap<>();
+        List<DuplicateGroup> groups = filesBySize.entrySet().parallelStream()
+                .flatMap(sizeGroup -> {
+                    long size = sizeGroup.getKey();
+                    List<Path> files = sizeGroup.getValue();
+                    Bucket bucket = new Bucket();
+                    rebuilt.put(size, bucket);
+                    if (files.size() == 1) {
+                        bucket.entries.add(new Entry(files.get(0), modified.get(files.get(0)), null));
+                        return Stream.<DuplicateGroup>empty();
+                    }
+                    Map<String, List<Path>> byHash = new HashMap<>();
+                    for (Path file : files) {
+                        try {
+                            byte[] hash = hash(file, size);
+                            bucket.entries.add(new Entry(file, modified.get(file), hash));
+                            byHash.computeIfAbsent(Arrays.toString(hash), k -> new ArrayList<>()).add(file);
+                        } catch (IOException ex) {
+                            ex.printStackTrace();
+                        }
+                    }
+                    return byHash.values().stream()
+                            .filter(same -> same.size() > 1)
+                            .map(same -> new DuplicateGroup(size, same));
+                })
+                .sorted(Comparator.comparingLong(DuplicateGroup::getReclaimableBytes).reversed())
+                .collect(Collectors.toList());
+
+        bySize.clear();
+        bySize.putAll(rebuilt);
+        dirty = true;
+        return groups;
+    }
+
+    // --- Persistence ---
+
+    //loads the index on first use, later calls return immediately
+    public synchronized void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        FileSortifyEvents.Persistence event = new FileSortifyEvents.Persistence();
+        event.begin();
+        long start = Metrics.start();
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unrecognized index file: " + indexFile);
+            }
+            int buckets = in.readInt();
+            for (int b = 0; b < buckets; b++) {
+                long size = in.readLong();
+                int count = in.readInt();
+                Bucket bucket = new Bucket();
+                for (int i = 0; i < count; i++) {
+                    Path path = Paths.get(in.readUTF());
+                    long lastModified = in.readLong();
+                    byte[] hash = null;
+                    int hashLength = in.readUnsignedByte();
+                    if (hashLength > 0) {
+                        hash = new byte[hashLength];
+                        in.readFully(hash);
+                    }
+                    bucket.entries.add(new Entry(path, lastModified, hash));
+                }
+                records += count;
+                bySize.put(size, bucket);
+            }
+        } catch (EOFException ex) {
+            throw new IOException("Truncated index file: " + indexFile, ex);
+        }
+        dirty = false;
+        LOAD_LATENCY.recordSince(start);
+        FileSortifyEvents.commit(event, "dedup index load", indexFile, records, event.shouldCommit() ? Files.size(indexFile) : 0);
+    }
+
+    //writes the index if it changed, via a temporary file so a crash never leaves half an index
+    public void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        FileSortifyEvents.Persistence event = new FileSortifyEvents.Persistence();
+        event.begin();
+        long start = Metrics.start();
+        int records = 0;
+        Files.createDirectories(indexFile.getParent());
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            List<Map.Entry<Long, Bucket>> buckets = new ArrayList<>(bySize.entrySet());
+            out.writeInt(buckets.size());
+            for (Map.Entry<Long, Bucket> sizeBucket : buckets) {
+                Bucket bucket = sizeBucket.getValue();
+                synchronized (bucket) {
+                    out.writeLong(sizeBucket.getKey());
+                    Collection<Entry> entries = bucket.entries;
+                    out.writeInt(entries.size());
+                    records += entries.size();
+                    for (Entry entry : entries) {
+                        out.writeUTF(entry.path.toString());
+                        out.writeLong(entry.lastModified);
+                        byte[] hash = entry.hash;
+                        out.writeByte(hash == null ? 0 : hash.length);
+                        if (hash != null) {
+                            out.write(hash);
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        SAVE_LATENCY.recordSince(start);
+        FileSortifyEvents.commit(event, "dedup index save", indexFile, records, event.shouldCommit() ? Files.size(indexFile) : 0);
+    }
+
+    // --- Hashing ---
+
+    /**
+     * Hash and modification time of an indexed file, hashed on first need without changing the entry;
+     * the same hash array as the entry's if it is still current. Null if the file is gone or its size changed.
+     */
+    private static Entry hashOf(Entry entry, long size) {
+        byte[] hash = entry.hash;
+        long known = entry.lastModified;
+        try {
+            Path pending = entry.pendingSource;
+            if (pending != null) {
+                try {
+                    return new Entry(entry.path, known, hash != null ? hash : hash(pending, size));
+                } catch (NoSuchFileException ex) {
+                    //moved into place meanwhile, fall through to the destination
+                }
+            }
+            long lastModified = Files.getLastModifiedTime(entry.path).toMillis();
+            if (Files.size(entry.path) != size) {
+                return null;
+            }
+            if (hash == null || (known != -1 && known != lastModified)) {
+                return new Entry(entry.path, lastModified, hash(entry.path, size));
+            }
+            return new Entry(entry.path, known, hash);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    //SHA-256 of a file, read through the calling thread's direct buffer
+    public static byte[] hash(Path file, long size) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = HASH_BUFFER.get();
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    private static long lastModifiedOrMinusOne(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+}
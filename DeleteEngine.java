@@ -0,0 +1,340 @@
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes folder trees on a fork/join pool.
+ * Every directory is listed by one task, its entries are deleted in parallel batches and
+ * subdirectories become tasks of their own; a directory is removed once everything below it is
+ * gone. Failures are collected instead of aborting the job, and whatever cannot be deleted is
+ * left in place together with its parent directories. Like {@link ImportEngine} it never touches
+ * Swing: callers poll a {@link Job}.
+ */
+public class DeleteEngine {
+
+    //entries one task stats and deletes before the rest of a directory is handed to other workers
+    private static final int BATCH_SIZE = 256;
+    //failures kept for the report, the count goes on beyond this
+    private static final int MAX_REPORTED_FAILURES = 1000;
+
+    private static final Metrics.Counter FILES_DELETED = Metrics.counter("delete.files");
+    private static final Metrics.Counter BYTES_DELETED = Metrics.counter("delete.bytes");
+    private static final Metrics.Counter DELETE_FAILURES = Metrics.counter("delete.failures");
+    private static final Metrics.Histogram JOB_LATENCY = Metrics.histogram("delete.folder");
+
+    private final ForkJoinPool pool;
+
+    public DeleteEngine(int parallelism, int threadPriority) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("delete-worker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(threadPriority);
+            return t;
+        };
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), factory, null, false);
+    }
+
+    public DeleteEngine(int parallelism) {
+        this(parallelism, Thread.NORM_PRIORITY);
+    }
+
+    //deletes are metadata updates, a few more threads than cores keep the file system busy
+    public DeleteEngine() {
+        this(Math.min(8, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    /**
+     * Starts deleting root and everything below it. Symbolic links are deleted, never followed.
+     * A root that does not exist finishes at once without failures.
+     */
+    public Job delete(Path root) {
+        Job job = new Job(root);
+        pool.execute(job::run);
+        return job;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    //a path that could not be deleted or listed
+    public static final class Failure {
+        private final Path path;
+        private final IOException error;
+
+        Failure(Path path, IOException error) {
+            this.path = path;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public IOException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            //file system errors already name the file, only their reason is added
+            String reason = error instanceof FileSystemException ? ((FileSystemException) error).getReason() : error.getMessage();
+            return path + ": " + (reason != null ? reason : error.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * One running delete. Counters may be read from any thread while it runs.
+     */
+    public static final class Job {
+        private final Path root;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final LongAdder filesDeleted = new LongAdder();
+        private final LongAdder bytesDeleted = new LongAdder();
+        private final LongAdder directoriesDeleted = new LongAdder();
+        private final AtomicInteger failureCount = new AtomicInteger();
+        private final Queue<Failure> failures = new ConcurrentLinkedQueue<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        private Job(Path root) {
+            this.root = root;
+        }
+
+        public Path getRoot() {
+            return root;
+        }
+
+        //stops starting new deletes; what is already deleted stays deleted
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public boolean await(long timeoutMillis) throws InterruptedException {
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        //done without being cancelled and without failures, so root is gone
+        public boolean isComplete() {
+            return isDone() && !cancelled.get() && failureCount.get() == 0;
+        }
+
+        public long getFilesDeleted() {
+            return filesDeleted.sum();
+        }
+
+        public long getBytesDeleted() {
+            return bytesDeleted.sum();
+        }
+
+        public long getDirectoriesDeleted() {
+            return directoriesDeleted.sum();
+        }
+
+        public int getFailureCount() {
+            return failureCount.get();
+        }
+
+        //the first failures, at most MAX_REPORTED_FAILURES of them
+        public List<Failure> getFailures() {
+            return new ArrayList<>(failures);
+        }
+
+        public long getElapsedMillis() {
+            long end = isDone() ? endNanos : System.nanoTime();
+            return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+        }
+
+        private void run() {
+            FileSortifyEvents.Delete event = new FileSortifyEvents.Delete();
+            event.begin();
+            long start = Metrics.start();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    new DirectoryTask(this, root).invoke();
+                } else {
+                    deleteEntry(root, attributes);
+                }
+            } catch (NoSuchFileException ex) {
+                //already gone
+            } catch (IOException ex) {
+                fail(root, ex);
+            } catch (RuntimeException ex) {
+                fail(root, new IOException(ex));
+            } finally {
+                endNanos = System.nanoTime();
+                JOB_LATENCY.recordSince(start);
+                if (event.shouldCommit()) {
+                    event.path = root.toString();
+                    event.files = filesDeleted.sum();
+                    event.bytes = bytesDeleted.sum();
+                    event.commit();
+                }
+                done.countDown();
+            }
+        }
+
+        //deletes a file or link, false if it failed
+        private boolean deleteEntry(Path path, BasicFileAttributes attributes) {
+            try {
+                Files.delete(path);
+            } catch (NoSuchFileException ex) {
+                return true;
+            } catch (IOException ex) {
+                fail(path, ex);
+                return false;
+            }
+            long size = attributes.isRegularFile() ? attributes.size() : 0;
+            filesDeleted.increment();
+            bytesDeleted.add(size);
+            FILES_DELETED.increment();
+            BYTES_DELETED.add(size);
+            return true;
+        }
+
+        private void fail(Path path, IOException error) {
+            DELETE_FAILURES.increment();
+            if (failureCount.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+                failures.add(new Failure(path, error));
+            }
+        }
+    }
+
+    /**
+     * Lists one directory, deletes its entries in batches and then the directory itself.
+     * Returns whether the directory is gone.
+     */
+    private static final class DirectoryTask extends RecursiveTask<Boolean> {
+        private final Job job;
+        private final Path directory;
+
+        DirectoryTask(Job job, Path directory) {
+            this.job = job;
+            this.directory = directory;
+        }
+
+        @Override
+        protected Boolean compute() {
+            boolean clean = true;
+            List<EntryBatch> batches = new ArrayList<>();
+            List<Path> entries = new ArrayList<>(BATCH_SIZE);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    if (job.cancelled.get()) {
+                        break;
+                    }
+                    entries.add(entry);
+                    if (entries.size() == BATCH_SIZE) {
+                        EntryBatch batch = new EntryBatch(job, entries);
+                        batch.fork();
+                        batches.add(batch);
+                        entries = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+            } catch (NoSuchFileException ex) {
+                return true;
+            } catch (IOException ex) {
+                job.fail(directory, ex);
+                clean = false;
+            } catch (DirectoryIteratorException ex) {
+                job.fail(directory, ex.getCause());
+                clean = false;
+            }
+            //the last partial batch runs here while the forked ones are stolen
+            if (!entries.isEmpty()) {
+                clean &= new EntryBatch(job, entries).compute();
+            }
+            for (EntryBatch batch : batches) {
+                clean &= batch.join();
+            }
+            if (!clean || job.cancelled.get()) {
+                return false;
+            }
+            try {
+                Files.delete(directory);
+                job.directoriesDeleted.increment();
+                return true;
+            } catch (NoSuchFileException ex) {
+                return true;
+            } catch (IOException ex) {
+                job.fail(directory, ex);
+                return false;
+            }
+        }
+    }
+
+    //deletes a slice of one directory's entries, forking a DirectoryTask for each subdirectory
+    private static final class EntryBatch extends RecursiveTask<Boolean> {
+        private final Job job;
+        private final List<Path> entries;
+
+        EntryBatch(Job job, List<Path> entries) {
+            this.job = job;
+            this.entries = entries;
+        }
+
+        @Override
+        protected Boolean compute() {
+            boolean clean = true;
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            for (Path entry : entries) {
+                if (job.cancelled.get()) {
+                    clean = false;
+                    break;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException ex) {
+                    continue;
+                } catch (IOException ex) {
+                    job.fail(entry, ex);
+                    clean = false;
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    DirectoryTask task = new DirectoryTask(job, entry);
+                    task.fork();
+                    subdirectories.add(task);
+                } else {
+                    clean &= job.deleteEntry(entry, attributes);
+                }
+            }
+            for (DirectoryTask task : subdirectories) {
+                clean &= task.join();
+            }
+            return clean;
+        }
+    }
+}
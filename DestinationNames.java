@@ -0,0 +1,111 @@
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The file names in the destination folders of one batch.
+ * Each folder is listed once, the first time a file is sorted into it; after that a collision
+ * check is a set lookup instead of a stat per file. Destinations handed out by the batch are
+ * claimed here, so two sources with the same name never race for the same target, and are
+ * added to their folder's names once the file has landed. A folder is listed again after
+ * RELIST_SECONDS so long-running batches, like a watched inbox, notice files removed meanwhile.
+ * Thread-safe.
+ */
+public final class DestinationNames {
+
+    private static final long RELIST_NANOS = TimeUnit.SECONDS.toNanos(30);
+    //on these file systems "A.txt" and "a.txt" are the same file
+    private static final boolean CASE_INSENSITIVE = isCaseInsensitivePlatform();
+
+    private final Map<Path, Folder> folders = new ConcurrentHashMap<>();
+    //destination -> source of every destination handed out and not yet released
+    private final Map<Path, Path> claimed = new ConcurrentHashMap<>();
+
+    private static final class Folder {
+        final Set<String> names;
+        final long listedAtNanos;
+
+        Folder(Set<String> names, long listedAtNanos) {
+            this.names = names;
+            this.listedAtNanos = listedAtNanos;
+        }
+    }
+
+    //whether a file of that name was in its folder when the folder was listed, or has landed since
+    public boolean exists(Path destination) {
+        return folder(destination.getParent()).names.contains(key(destination));
+    }
+
+    //the source this batch is already writing to destination, null if none
+    public Path claimedBy(Path destination) {
+        return claimed.get(destination);
+    }
+
+    /**
+     * Takes destination for source if nothing exists there and the batch has not handed it out yet.
+     */
+    public boolean claimIfFree(Path destination, Path source) {
+        return !exists(destination) && claimed.putIfAbsent(destination, source) == null;
+    }
+
+    //takes destination for source even though a file exists there, false if the batch already handed it out
+    public boolean claimExisting(Path destination, Path source) {
+        return claimed.putIfAbsent(destination, source) == null;
+    }
+
+    //the transfer to destination is over; if it landed the name is taken on disk from now on
+    public void release(Path destination, boolean landed) {
+        if (landed) {
+            //under the folder's lock, so a listing running meanwhile cannot drop the name
+            folders.computeIfPresent(destination.getParent(), (directory, folder) -> {
+                folder.names.add(key(destination));
+                return folder;
+            });
+        }
+        claimed.remove(destination);
+    }
+
+    private Folder folder(Path directory) {
+        Folder folder = folders.get(directory);
+        if (folder != null && System.nanoTime() - folder.listedAtNanos <= RELIST_NANOS) {
+            return folder;
+        }
+        return folders.compute(directory, (key, current) ->
+                current != null && System.nanoTime() - current.listedAtNanos <= RELIST_NANOS ? current : list(directory));
+    }
+
+    private static Folder list(Path directory) {
+        long now = System.nanoTime();
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                names.add(key(entry));
+            }
+        } catch (NoSuchFileException | NotDirectoryException ex) {
+            //created when the first file lands
+        } catch (IOException ex) {
+            //unreadable: nothing is known to exist, the transfer reports the real error
+            ex.printStackTrace();
+        }
+        return new Folder(names, now);
+    }
+
+    private static String key(Path file) {
+        String name = file.getFileName().toString();
+        return CASE_INSENSITIVE ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    private static boolean isCaseInsensitivePlatform() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        return os.startsWith("windows") || os.startsWith("mac");
+    }
+}
@@ -0,0 +1,158 @@
+
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streams the regular files below a directory root to a handler as they are discovered.
+ * Only the chain of open directories is held in memory, so huge trees walk in flat memory;
+ * the handler is expected to push each file straight into the import pipeline.
+ */
+public final class DirectoryWalker {
+
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("win");
+
+    //filters applied while walking
+    public static final class Options {
+        private int maxDepth = Integer.MAX_VALUE;
+        private boolean includeHidden;
+        private boolean followLinks;
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        //1 means only the files directly inside the root
+        public Options maxDepth(int maxDepth) {
+            this.maxDepth = Math.max(1, maxDepth);
+            return this;
+        }
+
+        public boolean isIncludeHidden() {
+            return includeHidden;
+        }
+
+        public Options includeHidden(boolean includeHidden) {
+            this.includeHidden = includeHidden;
+            return this;
+        }
+
+        public boolean isFollowLinks() {
+            return followLinks;
+        }
+
+        //when false, symbolic links (to files or directories) are skipped
+        public Options followLinks(boolean followLinks) {
+            this.followLinks = followLinks;
+            return this;
+        }
+    }
+
+    //receives each regular file, returns false to stop the walk
+    public interface FileHandler {
+        boolean accept(Path file, BasicFileAttributes attributes) throws IOException, InterruptedException;
+    }
+
+    //counters for a finished walk
+    public static final class Stats {
+        private long filesAccepted;
+        private long entriesSkipped;
+        private long errors;
+
+        public long getFilesAccepted() {
+            return filesAccepted;
+        }
+
+        public long getEntriesSkipped() {
+            return entriesSkipped;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+    }
+
+    private DirectoryWalker() {
+    }
+
+    /**
+     * Walks the tree below root depth-first. Unreadable directories and link cycles are
+     * counted as errors and skipped instead of aborting the walk.
+     */
+    public static Stats walk(Path root, Options options, FileHandler handler) throws IOException, InterruptedException {
+        Stats stats = new Stats();
+        Set<FileVisitOption> visitOptions = options.isFollowLinks()
+                ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+        InterruptedException[] interrupted = new InterruptedException[1];
+
+        Files.walkFileTree(root, visitOptions, options.getMaxDepth(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && !options.isIncludeHidden() && isHidden(dir)) {
+                    stats.entriesSkipped++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                //directories cut off by maxDepth and unfollowed links show up here too
+                if (!attrs.isRegularFile() || (!options.isIncludeHidden() && isHidden(file))) {
+                    stats.entriesSkipped++;
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    if (!handler.accept(file, attrs)) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                } catch (InterruptedException ex) {
+                    interrupted[0] = ex;
+                    return FileVisitResult.TERMINATE;
+                }
+                stats.filesAccepted++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                if (!(exc instanceof FileSystemLoopException)) {
+                    exc.printStackTrace();
+                }
+                stats.errors++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                if (exc != null) {
+                    exc.printStackTrace();
+                    stats.errors++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (interrupted[0] != null) {
+            throw interrupted[0];
+        }
+        return stats;
+    }
+
+    //dot files everywhere, plus the hidden attribute on Windows
+    static boolean isHidden(Path path) throws IOException {
+        Path name = path.getFileName();
+        if (name != null && name.toString().startsWith(".")) {
+            return true;
+        }
+        return WINDOWS && Files.isHidden(path);
+    }
+}
@@ -0,0 +1,786 @@
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Segmented HTTP downloader.
+ * A download is probed first (length, Accept-Ranges, validators, file name). If the server
+ * serves byte ranges and the file is large enough, it is split into up to N segments fetched over
+ * parallel connections, each writing straight to its offset of a preallocated ".part" file with
+ * positional FileChannel writes. The finished file is renamed into place. Like the import engine
+ * it never touches Swing: callers poll {@link Download} objects from a timer.
+ * Range-capable downloads keep a {@link DownloadState} under the state directory, checkpointed
+ * every few seconds and on stop or failure, so {@link #resume} only fetches the missing blocks.
+ */
+public class DownloadEngine {
+
+    public static final int DEFAULT_CONNECTIONS = 8;
+    //below this a segment is not worth its own connection
+    private static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    //a dropped connection is retried from where it stopped
+    private static final int MAX_ATTEMPTS = 4;
+    static final String PART_SUFFIX = ".part";
+    //longest a throttled or waiting connection sleeps before checking for stop
+    private static final long PAUSE_SLICE_MILLIS = 100;
+    //how often completed blocks are flushed and recorded
+    private static final long CHECKPOINT_MILLIS = 2000;
+    private static final Pattern CONTENT_RANGE_TOTAL = Pattern.compile("bytes\\s+\\d+-\\d+/(\\d+)");
+    private static final Pattern CONTENT_RANGE_START = Pattern.compile("bytes\\s+(\\d+)-");
+    private static final Pattern FILENAME_EXTENDED = Pattern.compile("filename\\*\\s*=\\s*[^']*'[^']*'([^;]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FILENAME = Pattern.compile("filename\\s*=\\s*\"?([^\";]+)\"?", Pattern.CASE_INSENSITIVE);
+
+    private final ExecutorService threads;
+    private final Path stateDirectory;
+    private final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+    //connections open per host, 0 for no limit; permits are replaced when the limit changes
+    private volatile int connectionsPerHost;
+    private volatile Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public DownloadEngine(Path stateDirectory) {
+        this.stateDirectory = stateDirectory;
+        AtomicInteger threadCount = new AtomicInteger();
+        //connections block on the network, so one thread each; idle threads die after a minute
+        this.threads = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "download-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    //picks the final path once the remote file is known, e.g. from its name and category
+    public interface DestinationResolver {
+        Path resolve(RemoteFile remote) throws IOException;
+    }
+
+    public enum State {
+        PROBING, DOWNLOADING, COMPLETED, FAILED, STOPPED
+    }
+
+    /**
+     * What the server told us about a URL before downloading it.
+     */
+    public static final class RemoteFile {
+        private final URL url;
+        private final long length;
+        private final boolean acceptsRanges;
+        private final String etag;
+        private final String lastModified;
+        private final long lastModifiedMillis;
+        private final String fileName;
+        private final String contentType;
+
+        RemoteFile(URL url, long length, boolean acceptsRanges, String etag, String lastModified, long lastModifiedMillis,
+                   String fileName, String contentType) {
+            this.url = url;
+            this.length = length;
+            this.acceptsRanges = acceptsRanges;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.fileName = fileName;
+            this.contentType = contentType;
+        }
+
+        //final URL after redirects, used for every segment
+        public URL getUrl() {
+            return url;
+        }
+
+        //-1 if the server did not say
+        public long getLength() {
+            return length;
+        }
+
+        public boolean isAcceptsRanges() {
+            return acceptsRanges;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    //one byte range [start, end) fetched over its own connection, starts on a block boundary
+    private static final class Segment {
+        final long start;
+        final long end;
+        volatile long position;
+        volatile HttpURLConnection connection;
+        //first block of the segment not yet recorded as completed
+        int nextBlock;
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.position = start;
+            this.nextBlock = (int) (start / DownloadState.BLOCK_BYTES);
+        }
+
+        boolean isComplete() {
+            return position >= end;
+        }
+    }
+
+    /**
+     * A running or finished download. Progress can be read from any thread.
+     */
+    public final class Download {
+        private final URL url;
+        private final int maxConnections;
+        //state to continue from, null for a new download
+        private final DownloadState resumeFrom;
+        //added to by every connection on each chunk, so striped rather than one contended word
+        private final LongAdder bytesDone = new LongAdder();
+        private volatile long resumedBytes;
+        private volatile DownloadState transferState;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final List<Runnable> doneActions = new ArrayList<>();
+        private final List<Segment> segments = new ArrayList<>();
+        private volatile State state = State.PROBING;
+        private volatile RemoteFile remote;
+        private volatile Path destination;
+        private volatile IOException error;
+        private volatile boolean stopRequested;
+        //set by stop(), not when a failed segment ends the others
+        private volatile boolean stoppedByUser;
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        private Download(URL url, int maxConnections, DownloadState resumeFrom) {
+            this.url = url;
+            this.maxConnections = Math.max(1, maxConnections);
+            this.resumeFrom = resumeFrom;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        //null while probing
+        public RemoteFile getRemote() {
+            return remote;
+        }
+
+        //null while probing
+        public Path getDestination() {
+            return destination;
+        }
+
+        public long getBytesDone() {
+            return bytesDone.sum();
+        }
+
+        //-1 while unknown
+        public long getLength() {
+            RemoteFile current = remote;
+            return current != null ? current.getLength() : -1;
+        }
+
+        public synchronized int getConnections() {
+            return segments.size();
+        }
+
+        public IOException getError() {
+            return error;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public void await() throws InterruptedException {
+            done.await();
+        }
+
+        //runs action on the download's thread once it is done, right away if it already is
+        public void whenDone(Runnable action) {
+            synchronized (doneActions) {
+                if (!isDone()) {
+                    doneActions.add(action);
+                    return;
+                }
+            }
+            action.run();
+        }
+
+        //waits at most timeoutMillis, true if the download is done
+        public boolean await(long timeoutMillis) throws InterruptedException {
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        //average speed since the download (or this resume of it) started
+        public double getBytesPerSecond() {
+            long end = isDone() ? endNanos : System.nanoTime();
+            double seconds = (end - startNanos) / 1_000_000_000.0;
+            return seconds > 0 ? (bytesDone.sum() - resumedBytes) / seconds : 0;
+        }
+
+        //true if a stopped or failed download left state that resume() can continue from
+        public boolean isResumable() {
+            return transferState != null && isDone() && state != State.COMPLETED;
+        }
+
+        /**
+         * Aborts the transfer, open connections are dropped. What was fetched so far is kept
+         * for resume() if the server supports ranges, otherwise the partial file is removed.
+         */
+        public void stop() {
+            stoppedByUser = true;
+            cancel();
+        }
+
+        //drops the open connections and ends every segment
+        private void cancel() {
+            stopRequested = true;
+            synchronized (this) {
+                for (Segment segment : segments) {
+                    HttpURLConnection connection = segment.connection;
+                    if (connection != null) {
+                        connection.disconnect();
+                    }
+                }
+            }
+        }
+
+        private void run(DestinationResolver resolver) {
+            Path partFile = null;
+            try {
+                remote = probe(url);
+                destination = resumeFrom != null ? resumeFrom.getDestination() : resolver.resolve(remote);
+                partFile = destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+                Files.createDirectories(destination.getParent());
+                //blocks on disk are only reused if the server still has the very same file
+                boolean reuse = resumeFrom != null && resumeFrom.matches(remote) && Files.exists(partFile);
+                if (remote.isAcceptsRanges()) {
+                    transferState = reuse ? resumeFrom : new DownloadState(stateDirectory, url.toString(), destination,
+                            remote.getLength(), remote.getEtag(), remote.getLastModified(), maxConnections);
+                } else if (resumeFrom != null) {
+                    resumeFrom.delete();
+                }
+                state = State.DOWNLOADING;
+                Set<StandardOpenOption> options = reuse
+                        ? EnumSet.of(StandardOpenOption.WRITE)
+                        : EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try (FileChannel channel = FileChannel.open(partFile, options)) {
+                    long length = remote.getLength();
+                    if (length > 0 && channel.size() < length) {
+                        //sparse preallocation, every segment writes at its own offset
+                        channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+                    }
+                    if (transferState != null) {
+                        resumedBytes = transferState.getCompletedBytes();
+                        bytesDone.add(resumedBytes);
+                        transferState.save(transferState.snapshot());
+                    }
+                    planSegments(length);
+                    try {
+                        fetchAll(channel);
+                    } finally {
+                        checkpoint(channel);
+                    }
+                    channel.force(false);
+                }
+                if (stopRequested) {
+                    throw new IOException("Download stopped");
+                }
+                destination = moveIntoPlace(partFile, destination);
+                if (remote.lastModifiedMillis > 0) {
+                    Files.setLastModifiedTime(destination, FileTime.fromMillis(remote.lastModifiedMillis));
+                }
+                if (transferState != null) {
+                    transferState.delete();
+                }
+                state = State.COMPLETED;
+            } catch (IOException | RuntimeException ex) {
+                error = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+                state = stoppedByUser ? State.STOPPED : State.FAILED;
+                if (transferState == null) {
+                    deleteQuietly(partFile);
+                }
+            } catch (InterruptedException ex) {
+                error = new IOException("Download interrupted", ex);
+                state = State.STOPPED;
+                if (transferState == null) {
+                    deleteQuietly(partFile);
+                }
+                Thread.currentThread().interrupt();
+            } finally {
+                endNanos = System.nanoTime();
+                List<Runnable> actions;
+                synchronized (doneActions) {
+                    done.countDown();
+                    actions = new ArrayList<>(doneActions);
+                }
+                for (Runnable action : actions) {
+                    action.run();
+                }
+            }
+        }
+
+        //makes the completed blocks durable, then records them; never records a block before it is on disk
+        private void checkpoint(FileChannel channel) throws IOException {
+            DownloadState current = transferState;
+            if (current == null) {
+                return;
+            }
+            BitSet snapshot = current.snapshot();
+            channel.force(false);
+            current.save(snapshot);
+        }
+
+        /**
+         * Splits the missing ranges into segments, one connection each: the largest range is
+         * halved on a block boundary until there is a segment per connection or the pieces get
+         * too small. Downloads without ranges get one stream, open-ended if the length is unknown.
+         */
+        private synchronized void planSegments(long length) {
+            if (transferState == null) {
+                segments.add(new Segment(0, length < 0 ? Long.MAX_VALUE : length));
+                return;
+            }
+            List<long[]> ranges = transferState.missingRanges();
+            int connections = connectionsPerHost > 0 ? Math.min(maxConnections, connectionsPerHost) : maxConnections;
+            while (!ranges.isEmpty() && ranges.size() < connections) {
+                long[] largest = ranges.get(0);
+                for (long[] range : ranges) {
+                    if (range[1] - range[0] > largest[1] - largest[0]) {
+                        largest = range;
+                    }
+                }
+                long blocks = (largest[1] - largest[0] + DownloadState.BLOCK_BYTES - 1) / DownloadState.BLOCK_BYTES;
+                long half = largest[0] + (blocks / 2) * DownloadState.BLOCK_BYTES;
+                if (largest[1] - largest[0] < 2 * MIN_SEGMENT_BYTES || half <= largest[0]) {
+                    break;
+                }
+                ranges.add(ranges.indexOf(largest) + 1, new long[]{half, largest[1]});
+                largest[1] = half;
+            }
+            for (long[] range : ranges) {
+                segments.add(new Segment(range[0], range[1]));
+            }
+        }
+
+        //runs all segments and checkpoints their progress while waiting
+        private void fetchAll(FileChannel channel) throws IOException, InterruptedException {
+            List<Future<?>> futures = new ArrayList<>();
+            List<Segment> planned;
+            synchronized (this) {
+                planned = new ArrayList<>(segments);
+            }
+            for (Segment segment : planned) {
+                futures.add(threads.submit(() -> {
+                    fetch(segment, channel, remote.isAcceptsRanges());
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    while (true) {
+                        try {
+                            future.get(CHECKPOINT_MILLIS, TimeUnit.MILLISECONDS);
+                            break;
+                        } catch (TimeoutException ex) {
+                            checkpoint(channel);
+                        }
+                    }
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                        //one broken segment fails the download, stop the others
+                        cancel();
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        //fetches one segment once the host has a free connection
+        private void fetch(Segment segment, FileChannel channel, boolean ranged) throws IOException {
+            Semaphore permits = connectionsPerHost > 0
+                    ? hostPermits.computeIfAbsent(remote.getUrl().getHost().toLowerCase(Locale.ROOT), host -> new Semaphore(connectionsPerHost))
+                    : null;
+            try {
+                while (permits != null && !permits.tryAcquire(PAUSE_SLICE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (stopRequested) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download interrupted", ex);
+            }
+            try {
+                fetchSegment(segment, channel, ranged);
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+
+        //reconnects from the last written byte after a dropped connection
+        private void fetchSegment(Segment segment, FileChannel channel, boolean ranged) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            IOException lastError = null;
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS && !segment.isComplete() && !stopRequested; attempt++) {
+                if (!ranged && segment.position > 0) {
+                    //a stream without ranges cannot continue, start over
+                    bytesDone.add(segment.start - segment.position);
+                    segment.position = segment.start;
+                }
+                HttpURLConnection connection = openConnection(remote.getUrl());
+                segment.connection = connection;
+                try {
+                    if (ranged) {
+                        connection.setRequestProperty("Range", "bytes=" + segment.position + "-" + (segment.end - 1));
+                        //if the file changed on the server we get all of it with a 200 instead of a wrong piece
+                        String validator = remote.getEtag() != null && !remote.getEtag().startsWith("W/") ? remote.getEtag() : remote.getLastModified();
+                        if (validator != null) {
+                            connection.setRequestProperty("If-Range", validator);
+                        }
+                    }
+                    int code = connection.getResponseCode();
+                    if (ranged) {
+                        checkPartialContent(connection, code, segment.position);
+                    } else if (code != HttpURLConnection.HTTP_OK) {
+                        String message = "HTTP " + code + " " + connection.getResponseMessage();
+                        throw code >= 400 && code < 500 ? new PermanentException(message) : new IOException(message);
+                    }
+                    long before = segment.position;
+                    try (InputStream in = connection.getInputStream(); ReadableByteChannel source = Channels.newChannel(in)) {
+                        copy(source, channel, segment, buffer);
+                    }
+                    if (segment.end == Long.MAX_VALUE) {
+                        //open-ended stream: end of body is the end of the file
+                        return;
+                    }
+                    if (segment.position > before) {
+                        //made progress, the next drop gets a fresh set of attempts
+                        attempt = 0;
+                    }
+                } catch (IOException ex) {
+                    lastError = ex;
+                    if (isPermanent(ex)) {
+                        break;
+                    }
+                } finally {
+                    segment.connection = null;
+                    connection.disconnect();
+                }
+            }
+            if (!segment.isComplete() && !stopRequested) {
+                throw lastError != null ? lastError : new IOException("Connection closed early at byte " + segment.position);
+            }
+        }
+
+        private void copy(ReadableByteChannel source, FileChannel channel, Segment segment, ByteBuffer buffer) throws IOException {
+            while (!segment.isComplete() && !stopRequested) {
+                buffer.clear();
+                long remaining = segment.end - segment.position;
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int read = source.read(buffer);
+                if (read < 0) {
+                    return;
+                }
+                throttle(read);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    //positional write, segments never share a file pointer
+                    int written = channel.write(buffer, segment.position);
+                    segment.position += written;
+                    bytesDone.add(written);
+                }
+                recordBlocks(segment);
+            }
+        }
+
+        //pauses as long as the shared speed cap asks, waking up early when the download is stopped
+        private void throttle(int bytes) throws IOException {
+            long pauseNanos = bandwidthLimiter.take(bytes);
+            long until = System.nanoTime() + pauseNanos;
+            try {
+                while (pauseNanos > 0 && !stopRequested) {
+                    TimeUnit.NANOSECONDS.sleep(Math.min(pauseNanos, TimeUnit.MILLISECONDS.toNanos(PAUSE_SLICE_MILLIS)));
+                    pauseNanos = until - System.nanoTime();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download interrupted", ex);
+            }
+        }
+
+        //marks the blocks the segment has fully written since the last call
+        private void recordBlocks(Segment segment) {
+            DownloadState current = transferState;
+            if (current == null) {
+                return;
+            }
+            int fullBlocks = segment.position >= remote.getLength()
+                    ? current.getBlockCount()
+                    : (int) (segment.position / DownloadState.BLOCK_BYTES);
+            if (fullBlocks > segment.nextBlock) {
+                current.markCompleted(segment.nextBlock, fullBlocks);
+                segment.nextBlock = fullBlocks;
+            }
+        }
+    }
+
+    /**
+     * Starts downloading url in the background with up to maxConnections parallel connections.
+     * The destination is chosen by resolver once the server has been probed.
+     */
+    public Download start(URL url, int maxConnections, DestinationResolver resolver) {
+        Download download = new Download(url, maxConnections, null);
+        threads.execute(() -> download.run(resolver));
+        return download;
+    }
+
+    /**
+     * Continues the stopped or failed download that was writing to destination, fetching only the
+     * blocks that are missing. If the file changed on the server it starts over.
+     */
+    public Download resume(Path destination, int maxConnections) throws IOException {
+        DownloadState saved = DownloadState.load(stateDirectory, destination);
+        if (saved == null) {
+            throw new IOException("No resumable download for " + destination);
+        }
+        Download download = new Download(new URL(saved.getUrl()), maxConnections, saved);
+        threads.execute(() -> download.run(null));
+        return download;
+    }
+
+    //true if there is saved progress for the download writing to destination
+    public boolean canResume(Path destination) {
+        return Files.exists(DownloadState.fileFor(stateDirectory, destination));
+    }
+
+    //drops the saved progress and partial file of a download that will not be resumed
+    public void discard(Path destination) {
+        deleteQuietly(DownloadState.fileFor(stateDirectory, destination));
+        deleteQuietly(destination.resolveSibling(destination.getFileName() + PART_SUFFIX));
+    }
+
+    //speed cap shared by all downloads of this engine
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    public int getConnectionsPerHost() {
+        return connectionsPerHost;
+    }
+
+    //applies to connections opened from now on, 0 removes the limit
+    public void setConnectionsPerHost(int connectionsPerHost) {
+        int limit = Math.max(0, connectionsPerHost);
+        if (limit != this.connectionsPerHost) {
+            this.connectionsPerHost = limit;
+            hostPermits = new ConcurrentHashMap<>();
+        }
+    }
+
+    //stops taking new downloads, running ones continue
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    /**
+     * Asks the server about url with HEAD, falling back to a one-byte range GET for servers
+     * that do not answer HEAD properly. Redirects are followed.
+     */
+    public static RemoteFile probe(URL url) throws IOException {
+        HttpURLConnection head = openConnection(url);
+        try {
+            head.setRequestMethod("HEAD");
+            int code = head.getResponseCode();
+            if (code == HttpURLConnection.HTTP_OK && head.getContentLengthLong() >= 0) {
+                boolean ranges = "bytes".equalsIgnoreCase(trim(head.getHeaderField("Accept-Ranges")));
+                return remoteFile(head, head.getContentLengthLong(), ranges);
+            }
+        } catch (IOException ex) {
+            //some servers reject HEAD, try a ranged GET below
+        } finally {
+            head.disconnect();
+        }
+        HttpURLConnection get = openConnection(url);
+        try {
+            get.setRequestProperty("Range", "bytes=0-0");
+            int code = get.getResponseCode();
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                Matcher total = CONTENT_RANGE_TOTAL.matcher(trim(get.getHeaderField("Content-Range")));
+                return total.find() ? remoteFile(get, Long.parseLong(total.group(1)), true) : remoteFile(get, -1, false);
+            }
+            if (code == HttpURLConnection.HTTP_OK) {
+                return remoteFile(get, get.getContentLengthLong(), false);
+            }
+            throw new IOException("HTTP " + code + " " + get.getResponseMessage() + " for " + url);
+        } finally {
+            get.disconnect();
+        }
+    }
+
+    private static RemoteFile remoteFile(HttpURLConnection connection, long length, boolean ranges) {
+        URL finalUrl = connection.getURL();
+        return new RemoteFile(finalUrl, length, ranges && length > 0,
+                connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), connection.getLastModified(),
+                fileNameOf(connection.getHeaderField("Content-Disposition"), finalUrl), connection.getContentType());
+    }
+
+    private static HttpURLConnection openConnection(URL url) throws IOException {
+        if (!"http".equalsIgnoreCase(url.getProtocol()) && !"https".equalsIgnoreCase(url.getProtocol())) {
+            throw new IOException("Only http and https URLs can be downloaded: " + url);
+        }
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setInstanceFollowRedirects(true);
+        //ranges of a compressed body would not line up with file offsets
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+
+    //a 206 for the wrong offset (or a 200 with the whole body) would corrupt the file
+    private static void checkPartialContent(HttpURLConnection connection, int code, long expectedStart) throws IOException {
+        if (code != HttpURLConnection.HTTP_PARTIAL) {
+            throw new PermanentException("Server ignored the byte range (HTTP " + code + ")");
+        }
+        Matcher start = CONTENT_RANGE_START.matcher(trim(connection.getHeaderField("Content-Range")));
+        if (!start.find() || Long.parseLong(start.group(1)) != expectedStart) {
+            throw new PermanentException("Unexpected Content-Range: " + connection.getHeaderField("Content-Range"));
+        }
+    }
+
+    private static boolean isPermanent(IOException ex) {
+        return ex instanceof PermanentException || ex instanceof java.io.FileNotFoundException;
+    }
+
+    //file name from Content-Disposition, else the last path segment of the URL
+    static String fileNameOf(String contentDisposition, URL url) {
+        String name = null;
+        if (contentDisposition != null) {
+            Matcher extended = FILENAME_EXTENDED.matcher(contentDisposition);
+            Matcher plain = FILENAME.matcher(contentDisposition);
+            if (extended.find()) {
+                name = URLDecoder.decode(extended.group(1).trim(), StandardCharsets.UTF_8);
+            } else if (plain.find()) {
+                name = plain.group(1).trim();
+            }
+        }
+        if (name == null || name.isEmpty()) {
+            String path = url.getPath();
+            name = path.substring(path.lastIndexOf('/') + 1);
+            name = URLDecoder.decode(name.replace("+", "%2B"), StandardCharsets.UTF_8);
+        }
+        //never let a server pick a path outside the category folder
+        name = name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            name = "download";
+        }
+        return name;
+    }
+
+    /**
+     * Renames the finished part file to destination, or to "name (1)" and so on if a file has taken
+     * that name meanwhile, e.g. after a restart nothing reserves it. Returns where the file landed.
+     */
+    private static Path moveIntoPlace(Path partFile, Path destination) throws IOException {
+        try {
+            FileTransfer.moveExclusively(partFile, destination);
+            return destination;
+        } catch (FileAlreadyExistsException ex) {
+            try {
+                return ConflictPolicy.rename(destination, candidate -> {
+                    try {
+                        FileTransfer.moveExclusively(partFile, candidate);
+                        return true;
+                    } catch (FileAlreadyExistsException taken) {
+                        return false;
+                    } catch (IOException other) {
+                        throw new UncheckedIOException(other);
+                    }
+                });
+            } catch (UncheckedIOException failed) {
+                throw failed.getCause();
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static String trim(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    //errors a retry cannot fix
+    private static final class PermanentException extends IOException {
+        PermanentException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,651 @@
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe persistence for the downloads table.
+ * Every insert, update and delete on the table model is appended to a binary journal as it
+ * happens, so an operation costs I/O proportional to the rows it touched. A writer thread
+ * batches records and fsyncs once per batch. When the journal grows large, the table's columns
+ * are copied and written out as a snapshot in the background, and older journals are dropped. Startup loads the latest
+ * snapshot and replays the journals after it; a torn record at the tail (crash mid-write) is
+ * discarded.
+ */
+public final class DownloadJournal implements TableModelListener {
+
+    private static final int SNAPSHOT_MAGIC = 0x46534453; // FSDS
+    private static final int SNAPSHOT_END = 0x454E4421;   // END!
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte RECORD_INSERT = 1;
+    private static final byte RECORD_UPDATE = 2;
+    private static final byte RECORD_DELETE = 3;
+
+    private static final byte CELL_NULL = 0;
+    private static final byte CELL_STRING = 1;
+    private static final byte CELL_LONG = 2;
+
+    //compact once the journal holds this many records and is bigger than the last snapshot
+    private static final int COMPACT_MIN_RECORDS = 10_000;
+    //the writer waits this long for more records before an fsync, trading latency for fewer syncs
+    private static final long GROUP_COMMIT_MILLIS = 20;
+
+    private static final Metrics.Histogram LOAD_LATENCY = Metrics.histogram("journal.load");
+    private static final Metrics.Histogram COMMIT_LATENCY = Metrics.histogram("journal.commit");
+    private static final Metrics.Histogram SNAPSHOT_LATENCY = Metrics.histogram("journal.snapshot");
+    private static final Metrics.Counter RECORDS_WRITTEN = Metrics.counter("journal.records");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("journal.bytes");
+
+    private final Path directory;
+    private final String baseName;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "downloads-compactor");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private TableModel model;
+    private Thread writer;
+    private volatile Consumer<IOException> errorHandler = IOException::printStackTrace;
+
+    //state of the newest journal, established by load()
+    private long generation;
+    private long validLength;
+    private int recordsSinceSnapshot;
+    private long journalBytes;
+    private volatile long snapshotBytes;
+
+    //marker objects on the writer queue
+    private static final class Rotate {
+        final long newGeneration;
+        //a copy of the table as the journal leaves it, nothing changes it anymore
+        final TableModel rows;
+
+        Rotate(long newGeneration, TableModel rows) {
+            this.newGeneration = newGeneration;
+            this.rows = rows;
+        }
+    }
+
+    private static final class Sync {
+        final CountDownLatch done = new CountDownLatch(1);
+    }
+
+    private static final Object STOP = new Object();
+
+    public DownloadJournal(Path directory, String baseName) {
+        this.directory = directory;
+        this.baseName = baseName;
+    }
+
+    //called on the writer thread when a write fails
+    public void setErrorHandler(Consumer<IOException> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Loads the table rows: latest snapshot plus all journals written after it.
+     * If there is no snapshot yet but a legacy ObjectOutputStream file exists, it is migrated.
+     */
+    public List<Object[]> load(Path legacyFile) throws IOException {
+        return load(legacyFile, 0, null);
+    }
+
+    /**
+     * Like {@link #load(Path)}, but hands the first firstPageRows rows of the result to firstPage
+     * as soon as they are known, usually long before the rest of the snapshot is decoded.
+     * firstPage is called at most once, on the calling thread, and not at all for a history
+     * that is not larger than the page. The returned list starts with the same rows.
+     */
+    public List<Object[]> load(Path legacyFile, int firstPageRows, Consumer<List<Object[]>> firstPage) throws IOException {
+        FileSortifyEvents.Persistence event = new FileSortifyEvents.Persistence();
+        event.begin();
+        long start = Metrics.start();
+        Files.createDirectories(directory);
+        Path snapshot = snapshotPath();
+        if (!Files.exists(snapshot) && legacyFile != null && Files.exists(legacyFile)) {
+            List<Object[]> legacy = readLegacy(legacyFile);
+            writeSnapshot(0, legacy.size(), legacy.isEmpty() ? 0 : legacy.get(0).length,
+                    (row, column) -> column < legacy.get(row).length ? legacy.get(row)[column] : null);
+            Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        try (DataInputStream in = Files.exists(snapshot) ? new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 64 * 1024)) : null) {
+            long snapshotGeneration = 0;
+            int rowCount = 0;
+            int columns = 0;
+            if (in != null) {
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Unrecognized downloads snapshot: " + snapshot);
+                }
+                snapshotGeneration = in.readLong();
+                rowCount = in.readInt();
+                columns = in.readUnsignedShort();
+                snapshotBytes = Files.size(snapshot);
+            }
+
+            //the journals are read before the snapshot rows, so the first page can be worked out early
+            List<byte[]> records = new ArrayList<>();
+            generation = snapshotGeneration;
+            validLength = 0;
+            for (Map.Entry<Long, Path> journal : listJournals().entrySet()) {
+                if (journal.getKey() < snapshotGeneration) {
+                    //left behind by a compaction interrupted after its snapshot was written
+                    Files.deleteIfExists(journal.getValue());
+                    continue;
+                }
+                generation = journal.getKey();
+                validLength = readRecords(journal.getValue(), records);
+                journalBytes = validLength;
+            }
+
+            //the journals delete at most this many rows, so this many snapshot rows decide the first page
+            long prefixRows = firstPage == null ? -1 : firstPageRows + deletedRows(records);
+            for (int row = 0; row < rowCount; row++) {
+                if (row == prefixRows) {
+                    firstPage.accept(firstRows(rows, records, firstPageRows));
+                }
+                Object[] values = new Object[columns];
+                for (int column = 0; column < columns; column++) {
+                    values[column] = readCell(in);
+                }
+                rows.add(values);
+            }
+            if (in != null && in.readInt() != SNAPSHOT_END) {
+                throw new IOException("Corrupt downloads snapshot: " + snapshot);
+            }
+            for (byte[] record : records) {
+                apply(record, rows);
+            }
+        }
+        LOAD_LATENCY.recordSince(start);
+        FileSortifyEvents.commit(event, "downloads load", directory, rows.size(), snapshotBytes + journalBytes);
+        return rows;
+    }
+
+    //moves unreadable persistence files aside so the table can start empty
+    public void reset() throws IOException {
+        Files.createDirectories(directory);
+        Path snapshot = snapshotPath();
+        if (Files.exists(snapshot)) {
+            Files.move(snapshot, snapshot.resolveSibling(snapshot.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (Path journal : listJournals().values()) {
+            Files.move(journal, journal.resolveSibling(journal.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        generation = 0;
+        validLength = 0;
+        journalBytes = 0;
+        snapshotBytes = 0;
+    }
+
+    /**
+     * Starts journaling changes of the given model, which must hold exactly the rows returned by
+     * {@link #load}. Must be called on the EDT.
+     */
+    public void attach(TableModel model) throws IOException {
+        this.model = model;
+        FileChannel channel = FileChannel.open(journalPath(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        //drop a torn tail so new records follow the last complete one
+        channel.truncate(validLength);
+        channel.position(validLength);
+        model.addTableModelListener(this);
+        writer = new Thread(() -> writeLoop(channel), "downloads-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //asks the writer to fsync now without waiting for it
+    public void requestSync() {
+        queue.add(new Sync());
+    }
+
+    //blocks until everything journaled so far is on disk, then stops the writer
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        model.removeTableModelListener(this);
+        Sync sync = new Sync();
+        queue.add(sync);
+        queue.add(STOP);
+        try {
+            sync.done.await(10, TimeUnit.SECONDS);
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    // --- Recording, on the EDT ---
+
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        //transfer speeds are redrawn many times a second and mean nothing after a restart
+        if (e instanceof DownloadTableModel.TransientUpdateEvent) {
+            return;
+        }
+        int first = e.getFirstRow();
+        int last = e.getLastRow();
+        if (first == TableModelEvent.HEADER_ROW || last == Integer.MAX_VALUE) {
+            //structure or whole-table change: the journal cannot describe it, write a snapshot
+            compact();
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            switch (e.getType()) {
+                case TableModelEvent.INSERT:
+                    out.writeByte(RECORD_INSERT);
+                    writeRows(out, first, last);
+                    break;
+                case TableModelEvent.UPDATE:
+                    out.writeByte(RECORD_UPDATE);
+                    writeRows(out, first, last);
+                    break;
+                case TableModelEvent.DELETE:
+                    out.writeByte(RECORD_DELETE);
+                    out.writeInt(first);
+                    out.writeInt(last);
+                    break;
+                default:
+                    return;
+            }
+            out.flush();
+            byte[] record = bytes.toByteArray();
+            queue.add(record);
+            recordsSinceSnapshot++;
+            journalBytes += record.length + 8;
+            if (recordsSinceSnapshot >= COMPACT_MIN_RECORDS && journalBytes > snapshotBytes) {
+                compact();
+            }
+        } catch (IOException ex) {
+            errorHandler.accept(ex);
+        }
+    }
+
+    private void writeRows(DataOutputStream out, int first, int last) throws IOException {
+        int columns = model.getColumnCount();
+        out.writeInt(first);
+        out.writeInt(last - first + 1);
+        out.writeShort(columns);
+        for (int row = first; row <= last; row++) {
+            for (int column = 0; column < columns; column++) {
+                writeCell(out, model.getValueAt(row, column));
+            }
+        }
+    }
+
+    /**
+     * Starts a new journal generation and writes a snapshot of the current rows in the background.
+     * A DownloadTableModel only copies its column arrays here on the EDT; the cells are rendered
+     * and serialized by the compactor. Other models are copied cell by cell.
+     */
+    private void compact() {
+        TableModel rows;
+        if (model instanceof DownloadTableModel) {
+            rows = ((DownloadTableModel) model).snapshot();
+        } else {
+            int columns = model.getColumnCount();
+            DefaultTableModel copy = new DefaultTableModel(0, columns);
+            for (int row = 0; row < model.getRowCount(); row++) {
+                Object[] values = new Object[columns];
+                for (int column = 0; column < columns; column++) {
+                    values[column] = model.getValueAt(row, column);
+                }
+                copy.addRow(values);
+            }
+            rows = copy;
+        }
+        generation++;
+        recordsSinceSnapshot = 0;
+        journalBytes = 0;
+        queue.add(new Rotate(generation, rows));
+    }
+
+    // --- Writing, on the writer thread ---
+
+    private void writeLoop(FileChannel initialChannel) {
+        FileChannel channel = initialChannel;
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * 1024);
+        List<Sync> waiting = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        boolean running = true;
+        while (running) {
+            try {
+                Object item = queue.take();
+                //group commit: collect whatever else arrives shortly, then write and fsync once
+                List<Object> items = new ArrayList<>();
+                items.add(item);
+                Object more;
+                while ((more = queue.poll(items.size() == 1 ? GROUP_COMMIT_MILLIS : 0, TimeUnit.MILLISECONDS)) != null) {
+                    items.add(more);
+                    if (items.size() >= 4096) {
+                        break;
+                    }
+                }
+                batch.reset();
+                FileSortifyEvents.Persistence event = new FileSortifyEvents.Persistence();
+                event.begin();
+                long start = Metrics.start();
+                int records = 0;
+                long bytes = 0;
+                for (Object next : items) {
+                    if (next instanceof byte[]) {
+                        byte[] record = (byte[]) next;
+                        records++;
+                        bytes += record.length + 8;
+                        crc.reset();
+                        crc.update(record);
+                        DataOutputStream out = new DataOutputStream(batch);
+                        out.writeInt(record.length);
+                        out.write(record);
+                        out.writeInt((int) crc.getValue());
+                    } else if (next instanceof Rotate) {
+                        write(channel, batch);
+                        channel.force(false);
+                        channel.close();
+                        Rotate rotate = (Rotate) next;
+                        channel = FileChannel.open(journalPath(rotate.newGeneration), StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                        compactor.execute(() -> writeSnapshotAndPrune(rotate));
+                    } else if (next instanceof Sync) {
+                        waiting.add((Sync) next);
+                    } else if (next == STOP) {
+                        running = false;
+                    }
+                }
+                write(channel, batch);
+                channel.force(false);
+                if (records > 0) {
+                    COMMIT_LATENCY.recordSince(start);
+                    RECORDS_WRITTEN.add(records);
+                    BYTES_WRITTEN.add(bytes);
+                    FileSortifyEvents.commit(event, "journal commit", directory, records, bytes);
+                }
+            } catch (InterruptedException ex) {
+                running = false;
+            } catch (IOException ex) {
+                errorHandler.accept(ex);
+            } finally {
+                for (Sync sync : waiting) {
+                    sync.done.countDown();
+                }
+                waiting.clear();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            errorHandler.accept(ex);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteArrayOutputStream batch) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        batch.reset();
+    }
+
+    private void writeSnapshotAndPrune(Rotate rotate) {
+        try {
+            TableModel rows = rotate.rows;
+            writeSnapshot(rotate.newGeneration, rows.getRowCount(), rows.getColumnCount(), rows::getValueAt);
+            snapshotBytes = Files.size(snapshotPath());
+            for (Map.Entry<Long, Path> journal : listJournals().entrySet()) {
+                if (journal.getKey() < rotate.newGeneration) {
+                    Files.deleteIfExists(journal.getValue());
+                }
+            }
+        } catch (IOException ex) {
+            errorHandler.accept(ex);
+        }
+    }
+
+    // --- File formats ---
+
+    private Path snapshotPath() {
+        return directory.resolve(baseName + ".snapshot");
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return directory.resolve(baseName + "." + journalGeneration + ".journal");
+    }
+
+    private TreeMap<Long, Path> listJournals() throws IOException {
+        TreeMap<Long, Path> journals = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, baseName + ".*.journal")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String number = name.substring(baseName.length() + 1, name.length() - ".journal".length());
+                try {
+                    journals.put(Long.parseLong(number), path);
+                } catch (NumberFormatException ex) {
+                    //not one of ours
+                }
+            }
+        }
+        return journals;
+    }
+
+    private interface Cells {
+        Object get(int row, int column);
+    }
+
+    //writes the snapshot to a temporary file, syncs it and moves it into place atomically
+    private void writeSnapshot(long snapshotGeneration, int rowCount, int columns, Cells rows) throws IOException {
+        FileSortifyEvents.Persistence event = new FileSortifyEvents.Persistence();
+        event.begin();
+        long start = Metrics.start();
+        Path temp = directory.resolve(baseName + ".snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(rowCount);
+            out.writeShort(columns);
+            for (int row = 0; row < rowCount; row++) {
+                for (int column = 0; column < columns; column++) {
+                    writeCell(out, rows.get(row, column));
+                }
+            }
+            out.writeInt(SNAPSHOT_END);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, snapshotPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        SNAPSHOT_LATENCY.recordSince(start);
+        FileSortifyEvents.commit(event, "snapshot save", snapshotPath(), rowCount, event.shouldCommit() ? Files.size(snapshotPath()) : 0);
+    }
+
+    //reads every complete record of a journal into records, returns the length of the valid prefix
+    private static long readRecords(Path journal, List<byte[]> records) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), 64 * 1024))) {
+            while (true) {
+                int length;
+                byte[] record;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > 64 * 1024 * 1024) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    int checksum = in.readInt();
+                    crc.reset();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    break;
+                }
+                records.add(record);
+                valid += length + 8;
+            }
+        }
+        return valid;
+    }
+
+    private static long deletedRows(List<byte[]> records) {
+        long deleted = 0;
+        for (byte[] record : records) {
+            ByteBuffer header = ByteBuffer.wrap(record);
+            if (record.length >= 9 && header.get(0) == RECORD_DELETE) {
+                deleted += Math.max(0, header.getInt(5) - header.getInt(1) + 1);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * The first count rows of the loaded table, from a prefix of the snapshot at least count
+     * rows longer than what the journals delete. The records are replayed on a copy of the
+     * prefix while tracking how much of it still matches the full table: rows beyond that
+     * would come from the part of the snapshot not read yet.
+     */
+    private static List<Object[]> firstRows(List<Object[]> prefix, List<byte[]> records, int count) throws IOException {
+        List<Object[]> rows = new ArrayList<>(prefix);
+        int valid = rows.size();
+        for (byte[] record : records) {
+            ByteBuffer header = ByteBuffer.wrap(record);
+            byte type = header.get(0);
+            int first = header.getInt(1);
+            if (type == RECORD_DELETE) {
+                if (first < rows.size()) {
+                    apply(record, rows);
+                }
+                if (first < valid) {
+                    int last = header.getInt(5);
+                    valid = last < valid ? valid - (last - first + 1) : first;
+                }
+            } else {
+                apply(record, rows);
+                if (type == RECORD_INSERT && first <= valid) {
+                    valid += header.getInt(5);
+                }
+            }
+        }
+        return new ArrayList<>(rows.subList(0, Math.min(count, valid)));
+    }
+
+    private static void apply(byte[] record, List<Object[]> rows) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        int first = in.readInt();
+        if (type == RECORD_DELETE) {
+            int last = in.readInt();
+            rows.subList(first, Math.min(last + 1, rows.size())).clear();
+            return;
+        }
+        int count = in.readInt();
+        int columns = in.readUnsignedShort();
+        List<Object[]> changed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Object[] values = new Object[columns];
+            for (int column = 0; column < columns; column++) {
+                values[column] = readCell(in);
+            }
+            changed.add(values);
+        }
+        if (type == RECORD_INSERT) {
+            rows.addAll(Math.min(first, rows.size()), changed);
+        } else if (type == RECORD_UPDATE) {
+            for (int i = 0; i < count && first + i < rows.size(); i++) {
+                rows.set(first + i, changed.get(i));
+            }
+        }
+    }
+
+    private static void writeCell(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(CELL_NULL);
+        } else if (value instanceof Long || value instanceof Integer) {
+            out.writeByte(CELL_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else {
+            out.writeByte(CELL_STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    private static Object readCell(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case CELL_NULL:
+                return null;
+            case CELL_LONG:
+                return in.readLong();
+            case CELL_STRING:
+                return in.readUTF();
+            default:
+                throw new IOException("Corrupt cell tag " + tag);
+        }
+    }
+
+    //reads the Vector of row Vectors the old saveDownloads() wrote with ObjectOutputStream
+    @SuppressWarnings("unchecked")
+    private static List<Object[]> readLegacy(Path legacyFile) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacyFile)))) {
+            Vector<Vector<Object>> data = (Vector<Vector<Object>>) ois.readObject();
+            List<Object[]> rows = new ArrayList<>(data.size());
+            for (Vector<Object> row : data) {
+                rows.add(row.toArray());
+            }
+            return rows;
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Unreadable legacy downloads file: " + legacyFile, ex);
+        }
+    }
+}
@@ -0,0 +1,461 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds what changed below the download folder since the last scan, so the downloads table can
+ * be brought back in line with files moved or deleted in other programs.
+ * Every directory is remembered with its modification time and a (size, modified, file key)
+ * tuple per file. A directory whose time did not change is not listed again, only its
+ * subdirectories are checked, so rescanning an unchanged tree costs one stat per directory.
+ * Changed directories are listed and each file compared with its tuple. Subtrees are walked in
+ * parallel. Hidden entries and partial downloads are ignored. Like the folder badges, a file
+ * rewritten in place is noticed the next time something in its directory is added, removed or renamed.
+ * The listings are saved after every scan that changed them and loaded by the first scan of the
+ * next session, so a restart neither lists the whole tree again nor reports every file as new.
+ */
+public final class DownloadReconciler {
+
+    private static final Metrics.Histogram SCAN_LATENCY = Metrics.histogram("reconcile.scan");
+    private static final Metrics.Histogram LOAD_LATENCY = Metrics.histogram("reconcile.load");
+    private static final Metrics.Histogram SAVE_LATENCY = Metrics.histogram("reconcile.save");
+    private static final int FILE_MAGIC = 0x46534452; // FSDR
+    private static final int FILE_VERSION = 1;
+    private static final int PARALLELISM = 4;
+    //directories changed this close to the scan are listed again next time, the clock may be too coarse to tell
+    private static final long SETTLE_MILLIS = 2000;
+
+    //one directory as last listed, files sorted by name hash
+    private static final class Listing {
+        final long modified;
+        final long[] nameHashes;
+        final long[] sizes;
+        final long[] times;
+        final int[] keys;
+        final List<String> subdirectories;
+
+        Listing(long modified, long[] nameHashes, long[] sizes, long[] times, int[] keys, List<String> subdirectories) {
+            this.modified = modified;
+            this.nameHashes = nameHashes;
+            this.sizes = sizes;
+            this.times = times;
+            this.keys = keys;
+            this.subdirectories = subdirectories;
+        }
+
+        //the same files, listed again by the next scan
+        Listing retry() {
+            return new Listing(Long.MIN_VALUE, nameHashes, sizes, times, keys, subdirectories);
+        }
+
+        //true if the file with this hash has the same tuple as when it was listed
+        boolean unchanged(long nameHash, long size, long time, int key) {
+            int i = Arrays.binarySearch(nameHashes, nameHash);
+            return i >= 0 && sizes[i] == size && times[i] == time && keys[i] == key;
+        }
+    }
+
+    //a directory whose entries changed since the last scan
+    public static final class Change {
+        private final Path directory;
+        //every file in the directory now, sorted
+        private final String[] names;
+        //size of each file that is new or whose size, time or identity changed, -1 for the others
+        private final long[] changedSizes;
+
+        Change(Path directory, String[] names, long[] changedSizes) {
+            this.directory = directory;
+            this.names = names;
+            this.changedSizes = changedSizes;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public int getFileCount() {
+            return names.length;
+        }
+
+        public String getName(int file) {
+            return names[file];
+        }
+
+        //-1 if the file did not change since the last scan
+        public long getChangedSize(int file) {
+            return changedSizes[file];
+        }
+
+        //index of the file with this name, or a negative number if it is not in the directory
+        public int indexOf(String name) {
+            return Arrays.binarySearch(names, name);
+        }
+    }
+
+    //outcome of one scan
+    public static final class Result {
+        private final List<Change> changes;
+        private final long directories;
+        private final long directoriesListed;
+        private final long nanos;
+        private final boolean baseline;
+
+        Result(List<Change> changes, long directories, long directoriesListed, long nanos, boolean baseline) {
+            this.changes = changes;
+            this.directories = directories;
+            this.directoriesListed = directoriesListed;
+            this.nanos = nanos;
+            this.baseline = baseline;
+        }
+
+        public List<Change> getChanges() {
+            return changes;
+        }
+
+        public long getDirectories() {
+            return directories;
+        }
+
+        //directories that had changed and were listed
+        public long getDirectoriesListed() {
+            return directoriesListed;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        //false if there was nothing to compare with, e.g. on the very first scan: then every file counts as changed
+        public boolean hasBaseline() {
+            return baseline;
+        }
+    }
+
+    private final Path root;
+    private final Path stateFile;
+    private final Map<Path, Listing> listings = new ConcurrentHashMap<>();
+    private boolean loaded;
+    //listings changed since they were last saved
+    private volatile boolean dirty;
+    private final ForkJoinPool pool = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("reconcile-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }, null, false);
+
+    //stateFile keeps the listings between sessions
+    public DownloadReconciler(Path root, Path stateFile) {
+        this.root = root;
+        this.stateFile = stateFile;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Checks the whole tree and returns the directories that changed since the last scan, of this
+     * session or the last. Without saved listings every directory is listed. One scan runs at a
+     * time; blocks until it is done.
+     */
+    public synchronized Result scan() {
+        long start = System.nanoTime();
+        load();
+        boolean baseline = !listings.isEmpty();
+        long metricsStart = Metrics.start();
+        Queue<Change> changes = new ConcurrentLinkedQueue<>();
+        AtomicLong directories = new AtomicLong();
+        AtomicLong listed = new AtomicLong();
+        long settledBefore = System.currentTimeMillis() - SETTLE_MILLIS;
+        pool.invoke(new Check(root, changes, directories, listed, settledBefore));
+        SCAN_LATENCY.recordSince(metricsStart);
+        save();
+        return new Result(new ArrayList<>(changes), directories.get(), listed.get(), System.nanoTime() - start, baseline);
+    }
+
+    //whether directory existed in the last scan
+    public boolean isKnownDirectory(Path directory) {
+        return listings.containsKey(directory);
+    }
+
+    //lists the directories of a scan again next time, for changes that could not be applied
+    public void forget(Result result) {
+        for (Change change : result.changes) {
+            listings.remove(change.directory);
+        }
+        dirty = true;
+    }
+
+    //stops the scan threads and saves listings forgotten since the last scan
+    public void shutdown() {
+        pool.shutdownNow();
+        synchronized (this) {
+            save();
+        }
+    }
+
+    // --- Persistence ---
+
+    //reads the listings of the last session once; an unreadable file only costs one full listing
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.exists(stateFile)) {
+            return;
+        }
+        long start = Metrics.start();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile), 64 * 1024))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unrecognized download folder index: " + stateFile);
+            }
+            int count = in.readInt();
+            for (int d = 0; d < count; d++) {
+                Path directory = root.resolve(in.readUTF());
+                long modified = in.readLong();
+                int files = in.readInt();
+                long[] nameHashes = new long[files];
+                long[] sizes = new long[files];
+                long[] times = new long[files];
+                int[] keys = new int[files];
+                for (int i = 0; i < files; i++) {
+                    nameHashes[i] = in.readLong();
+                    sizes[i] = in.readLong();
+                    times[i] = in.readLong();
+                    keys[i] = in.readInt();
+                }
+                int subdirectoryCount = in.readInt();
+                List<String> subdirectories = new ArrayList<>(subdirectoryCount);
+                for (int i = 0; i < subdirectoryCount; i++) {
+                    subdirectories.add(in.readUTF());
+                }
+                listings.put(directory, new Listing(modified, nameHashes, sizes, times, keys, subdirectories));
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            listings.clear();
+        }
+        LOAD_LATENCY.recordSince(start);
+    }
+
+    //writes the listings if they changed, via a temporary file so a crash never leaves half of them
+    private void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        long start = Metrics.start();
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(stateFile.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                List<Map.Entry<Path, Listing>> entries = new ArrayList<>(listings.entrySet());
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<Path, Listing> entry : entries) {
+                    Listing listing = entry.getValue();
+                    out.writeUTF(root.relativize(entry.getKey()).toString());
+                    out.writeLong(listing.modified);
+                    out.writeInt(listing.nameHashes.length);
+                    for (int i = 0; i < listing.nameHashes.length; i++) {
+                        out.writeLong(listing.nameHashes[i]);
+                        out.writeLong(listing.sizes[i]);
+                        out.writeLong(listing.times[i]);
+                        out.writeInt(listing.keys[i]);
+                    }
+                    out.writeInt(listing.subdirectories.size());
+                    for (String name : listing.subdirectories) {
+                        out.writeUTF(name);
+                    }
+                }
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            dirty = true;
+        }
+        SAVE_LATENCY.recordSince(start);
+    }
+
+    private final class Check extends RecursiveAction {
+        private final Path directory;
+        private final Queue<Change> changes;
+        private final AtomicLong directories;
+        private final AtomicLong listed;
+        private final long settledBefore;
+
+        Check(Path directory, Queue<Change> changes, AtomicLong directories, AtomicLong listed, long settledBefore) {
+            this.directory = directory;
+            this.changes = changes;
+            this.directories = directories;
+            this.listed = listed;
+            this.settledBefore = settledBefore;
+        }
+
+        @Override
+        protected void compute() {
+            long modified;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (!attributes.isDirectory()) {
+                    forgetTree(directory);
+                    return;
+                }
+                modified = attributes.lastModifiedTime().toMillis();
+            } catch (IOException ex) {
+                forgetTree(directory);
+                return;
+            }
+            directories.incrementAndGet();
+            Listing old = listings.get(directory);
+            List<String> subdirectories = old != null && old.modified == modified ? old.subdirectories : list(old, modified);
+            if (subdirectories == null) {
+                //unreadable: whatever was known stays as it was and it is tried again next time
+                subdirectories = old != null ? old.subdirectories : List.of();
+                listings.put(directory, old != null ? old.retry()
+                        : new Listing(Long.MIN_VALUE, new long[0], new long[0], new long[0], new int[0], subdirectories));
+                dirty = true;
+            }
+            List<Check> checks = new ArrayList<>(subdirectories.size());
+            for (String name : subdirectories) {
+                checks.add(new Check(directory.resolve(name), changes, directories, listed, settledBefore));
+            }
+            invokeAll(checks);
+        }
+
+        //lists a changed directory, records its change and returns its subdirectories, null if it cannot be read
+        private List<String> list(Listing old, long modified) {
+            listed.incrementAndGet();
+            List<String> names = new ArrayList<>();
+            List<BasicFileAttributes> files = new ArrayList<>();
+            List<String> subdirectories = new ArrayList<>();
+            //regular files first, other entries only need to be known to exist
+            List<String> others = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    if (name.startsWith(".") || name.endsWith(DownloadEngine.PART_SUFFIX)) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException ex) {
+                        //gone since it was listed
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(name);
+                        continue;
+                    }
+                    //links and other special files count as present but are never adopted
+                    if (attributes.isRegularFile()) {
+                        names.add(name);
+                        files.add(attributes);
+                    } else {
+                        others.add(name);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException ex) {
+                ex.printStackTrace();
+                return null;
+            }
+
+            int count = names.size();
+            long[] hashes = new long[count];
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                hashes[i] = nameHash(names.get(i));
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+            long[] sortedHashes = new long[count];
+            long[] sizes = new long[count];
+            long[] times = new long[count];
+            int[] keys = new int[count];
+            Map<String, Long> changed = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int file = order[i];
+                BasicFileAttributes attributes = files.get(file);
+                sortedHashes[i] = hashes[file];
+                sizes[i] = attributes.size();
+                times[i] = attributes.lastModifiedTime().toMillis();
+                keys[i] = Objects.hashCode(attributes.fileKey());
+                if (old == null || !old.unchanged(sortedHashes[i], sizes[i], times[i], keys[i])) {
+                    changed.put(names.get(file), sizes[i]);
+                }
+            }
+
+            //subdirectories removed meanwhile drop out with everything below them
+            if (old != null) {
+                Set<String> kept = new HashSet<>(subdirectories);
+                for (String name : old.subdirectories) {
+                    if (!kept.contains(name)) {
+                        forgetTree(directory.resolve(name));
+                    }
+                }
+            }
+            //a directory changed just now may change again within the same clock tick, list it again next time
+            long recorded = modified < settledBefore ? modified : Long.MIN_VALUE;
+            listings.put(directory, new Listing(recorded, sortedHashes, sizes, times, keys, subdirectories));
+            dirty = true;
+            names.addAll(others);
+            String[] present = names.toArray(new String[0]);
+            Arrays.sort(present);
+            long[] changedSizes = new long[present.length];
+            for (int i = 0; i < present.length; i++) {
+                changedSizes[i] = changed.getOrDefault(present[i], -1L);
+            }
+            changes.add(new Change(directory, present, changedSizes));
+            return subdirectories;
+        }
+    }
+
+    private void forgetTree(Path directory) {
+        Listing listing = listings.remove(directory);
+        if (listing != null) {
+            dirty = true;
+            for (String name : listing.subdirectories) {
+                forgetTree(directory.resolve(name));
+            }
+        }
+    }
+
+    //64-bit FNV-1a of the name's characters, names are only ever compared within one directory
+    private static long nameHash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
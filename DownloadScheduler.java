@@ -0,0 +1,460 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named download queues fed to a {@link DownloadEngine}.
+ * Entries wait in their queue until it is started; the dispatcher then starts them from the
+ * highest priority queue first, keeping at most maxConcurrent queued downloads running.
+ * It also sets the engine's speed cap from the time windows (e.g. unlimited overnight) and its
+ * per-host connection limit. Uses no Swing, the listener is called on scheduler threads.
+ */
+public final class DownloadScheduler implements Closeable {
+
+    public static final String DEFAULT_QUEUE = "Main";
+    private static final long WINDOW_CHECK_SECONDS = 15;
+
+    /**
+     * Told when an entry starts, goes back to waiting (its queue was stopped) or cannot start.
+     */
+    public interface Listener {
+        void started(Entry entry, DownloadEngine.Download download);
+
+        void requeued(Entry entry);
+
+        void failed(Entry entry, IOException error);
+    }
+
+    /**
+     * A download waiting in a queue. With a resume destination that still has saved progress it
+     * continues from there, otherwise it starts from the URL and lets the resolver pick the file.
+     */
+    public static final class Entry {
+        private final long id;
+        private final String queue;
+        private final URL url;
+        private final int connections;
+        private final int priority;
+        private final DownloadEngine.DestinationResolver resolver;
+        private final long sequence;
+        private volatile Path resumeDestination;
+        private volatile boolean requeue;
+
+        /**
+         * id is the caller's key for the entry (the table row id), higher priority entries
+         * start before older ones of the same queue.
+         */
+        public Entry(long id, String queue, URL url, int connections, int priority, DownloadEngine.DestinationResolver resolver, Path resumeDestination) {
+            this.id = id;
+            this.queue = queue;
+            this.url = url;
+            this.connections = connections;
+            this.priority = priority;
+            this.resolver = resolver;
+            this.resumeDestination = resumeDestination;
+            this.sequence = SEQUENCE.getAndIncrement();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getQueue() {
+            return queue;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    /**
+     * Speed cap for the part of the day from start to end, wrapping past midnight if end is
+     * earlier than start. 0 bytes per second means unlimited.
+     */
+    public static final class SpeedWindow {
+        private final LocalTime start;
+        private final LocalTime end;
+        private final long bytesPerSecond;
+
+        public SpeedWindow(LocalTime start, LocalTime end, long bytesPerSecond) {
+            this.start = start;
+            this.end = end;
+            this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        }
+
+        //"22:00-07:00 0", speeds in KB/s
+        public static SpeedWindow parse(String text) {
+            String[] parts = text.trim().split("[\\s-]+");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected 'HH:mm-HH:mm KB/s': " + text);
+            }
+            try {
+                return new SpeedWindow(LocalTime.parse(parts[0]), LocalTime.parse(parts[1]), Long.parseLong(parts[2]) * 1024);
+            } catch (DateTimeParseException | NumberFormatException ex) {
+                throw new IllegalArgumentException("Expected 'HH:mm-HH:mm KB/s': " + text, ex);
+            }
+        }
+
+        public boolean contains(LocalTime time) {
+            if (start.isBefore(end)) {
+                return !time.isBefore(start) && time.isBefore(end);
+            }
+            return !time.isBefore(start) || time.isBefore(end);
+        }
+
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end + " " + bytesPerSecond / 1024;
+        }
+    }
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final Comparator<Entry> DISPATCH_ORDER =
+            Comparator.comparingInt((Entry entry) -> -entry.priority).thenComparingLong(entry -> entry.sequence);
+
+    //one named queue, guarded by the scheduler's lock
+    private static final class Queue {
+        final String name;
+        int priority;
+        boolean running;
+        final PriorityQueue<Entry> waiting = new PriorityQueue<>(DISPATCH_ORDER);
+
+        Queue(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+    }
+
+    private final DownloadEngine engine;
+    private final Map<String, Queue> queues = new LinkedHashMap<>();
+    private final Map<Entry, DownloadEngine.Download> running = new IdentityHashMap<>();
+    private final ScheduledExecutorService dispatcher;
+    private volatile Listener listener;
+    private int maxConcurrent = 3;
+    private long speedLimit;
+    private List<SpeedWindow> speedWindows = new ArrayList<>();
+
+    public DownloadScheduler(DownloadEngine engine) {
+        this.engine = engine;
+        this.queues.put(DEFAULT_QUEUE, new Queue(DEFAULT_QUEUE, 0));
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "download-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher.scheduleWithFixedDelay(this::applySpeedLimit, 0, WINDOW_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    //creates the queue or changes its priority; higher priority queues are served first
+    public synchronized void putQueue(String name, int priority) {
+        Queue queue = queues.get(name);
+        if (queue == null) {
+            queues.put(name, new Queue(name, priority));
+        } else {
+            queue.priority = priority;
+        }
+    }
+
+    //removes a queue that has nothing waiting or running, the default queue always stays
+    public synchronized boolean removeQueue(String name) {
+        Queue queue = queues.get(name);
+        if (queue == null || DEFAULT_QUEUE.equals(name) || !queue.waiting.isEmpty() || getRunningCount(name) > 0) {
+            return false;
+        }
+        queues.remove(name);
+        return true;
+    }
+
+    //queue names, highest priority first
+    public synchronized List<String> getQueueNames() {
+        List<Queue> ordered = new ArrayList<>(queues.values());
+        ordered.sort(Comparator.comparingInt((Queue queue) -> -queue.priority));
+        List<String> names = new ArrayList<>();
+        for (Queue queue : ordered) {
+            names.add(queue.name);
+        }
+        return names;
+    }
+
+    public synchronized int getPriority(String queueName) {
+        return queue(queueName).priority;
+    }
+
+    public synchronized boolean isRunning(String queueName) {
+        return queue(queueName).running;
+    }
+
+    public synchronized int getWaitingCount(String queueName) {
+        return queue(queueName).waiting.size();
+    }
+
+    public synchronized int getRunningCount(String queueName) {
+        int count = 0;
+        for (Entry entry : running.keySet()) {
+            if (entry.queue.equals(queueName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //adds entry to its queue, it starts as soon as the queue runs and a slot is free
+    public synchronized void submit(Entry entry) {
+        queue(entry.queue).waiting.add(entry);
+        dispatchLater();
+    }
+
+    //drops a waiting entry, returns false if there was none with that id
+    public synchronized boolean remove(long id) {
+        for (Queue queue : queues.values()) {
+            for (Iterator<Entry> iterator = queue.waiting.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().id == id) {
+                    iterator.remove();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized void startQueue(String queueName) {
+        queue(queueName).running = true;
+        dispatchLater();
+    }
+
+    /**
+     * Stops dispatching from the queue. Its running downloads are stopped too and wait in the
+     * queue again, continuing from their saved progress when it is started.
+     */
+    public synchronized void stopQueue(String queueName) {
+        queue(queueName).running = false;
+        for (Map.Entry<Entry, DownloadEngine.Download> item : running.entrySet()) {
+            if (item.getKey().queue.equals(queueName)) {
+                item.getKey().requeue = true;
+                item.getValue().stop();
+            }
+        }
+    }
+
+    public synchronized int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    //running downloads above a lowered limit finish, no new ones start until there is room
+    public synchronized void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        dispatchLater();
+    }
+
+    //speed cap outside the time windows, 0 for unlimited
+    public synchronized long getSpeedLimit() {
+        return speedLimit;
+    }
+
+    public synchronized void setSpeedLimit(long bytesPerSecond) {
+        this.speedLimit = Math.max(0, bytesPerSecond);
+        dispatcher.execute(this::applySpeedLimit);
+    }
+
+    public synchronized List<SpeedWindow> getSpeedWindows() {
+        return new ArrayList<>(speedWindows);
+    }
+
+    //the first window containing the current time decides the speed cap
+    public synchronized void setSpeedWindows(List<SpeedWindow> speedWindows) {
+        this.speedWindows = new ArrayList<>(speedWindows);
+        dispatcher.execute(this::applySpeedLimit);
+    }
+
+    /**
+     * Reads queues and limits saved by saveSettings; a missing file keeps the defaults.
+     * Waiting entries are not part of the settings.
+     */
+    public void loadSettings(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (NoSuchFileException ex) {
+            return;
+        }
+        try {
+            for (String item : properties.getProperty("queues", "").split(",")) {
+                int colon = item.lastIndexOf(':');
+                if (colon > 0) {
+                    putQueue(item.substring(0, colon).trim(), Integer.parseInt(item.substring(colon + 1).trim()));
+                }
+            }
+            List<SpeedWindow> windows = new ArrayList<>();
+            for (String item : properties.getProperty("speedWindows", "").split(",")) {
+                if (!item.trim().isEmpty()) {
+                    windows.add(SpeedWindow.parse(item));
+                }
+            }
+            setMaxConcurrent(Integer.parseInt(properties.getProperty("maxConcurrent", String.valueOf(getMaxConcurrent()))));
+            setSpeedLimit(Long.parseLong(properties.getProperty("speedLimit", "0")));
+            setSpeedWindows(windows);
+            engine.setConnectionsPerHost(Integer.parseInt(properties.getProperty("connectionsPerHost", "0")));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid scheduler settings in " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    public void saveSettings(Path file) throws IOException {
+        Properties properties = new Properties();
+        synchronized (this) {
+            StringBuilder queueList = new StringBuilder();
+            for (Queue queue : queues.values()) {
+                queueList.append(queueList.length() > 0 ? "," : "").append(queue.name).append(':').append(queue.priority);
+            }
+            StringBuilder windowList = new StringBuilder();
+            for (SpeedWindow window : speedWindows) {
+                windowList.append(windowList.length() > 0 ? "," : "").append(window);
+            }
+            properties.setProperty("queues", queueList.toString());
+            properties.setProperty("speedWindows", windowList.toString());
+            properties.setProperty("maxConcurrent", String.valueOf(maxConcurrent));
+            properties.setProperty("speedLimit", String.valueOf(speedLimit));
+        }
+        properties.setProperty("connectionsPerHost", String.valueOf(engine.getConnectionsPerHost()));
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "FileSortify download scheduler");
+        }
+    }
+
+    //stops dispatching, downloads already running are not touched
+    @Override
+    public void close() {
+        dispatcher.shutdownNow();
+    }
+
+    private Queue queue(String name) {
+        Queue queue = queues.get(name);
+        if (queue == null) {
+            throw new IllegalArgumentException("No such queue: " + name);
+        }
+        return queue;
+    }
+
+    private void dispatchLater() {
+        if (!dispatcher.isShutdown()) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    //starts waiting entries while there are free slots, highest priority running queue first
+    private void dispatch() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                if (running.size() >= maxConcurrent) {
+                    return;
+                }
+                Queue next = null;
+                for (Queue queue : queues.values()) {
+                    if (queue.running && !queue.waiting.isEmpty() && (next == null || queue.priority > next.priority)) {
+                        next = queue;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                entry = next.waiting.poll();
+            }
+            DownloadEngine.Download download;
+            try {
+                Path destination = entry.resumeDestination;
+                download = destination != null && engine.canResume(destination)
+                        ? engine.resume(destination, entry.connections)
+                        : engine.start(entry.url, entry.connections, entry.resolver);
+            } catch (IOException ex) {
+                notifyFailed(entry, ex);
+                continue;
+            }
+            synchronized (this) {
+                entry.requeue = false;
+                running.put(entry, download);
+            }
+            Listener current = listener;
+            if (current != null) {
+                current.started(entry, download);
+            }
+            download.whenDone(() -> finished(entry, download));
+        }
+    }
+
+    //runs on the download's thread
+    private void finished(Entry entry, DownloadEngine.Download download) {
+        boolean requeued = false;
+        synchronized (this) {
+            running.remove(entry);
+            if (entry.requeue && download.getState() == DownloadEngine.State.STOPPED && queues.containsKey(entry.queue)) {
+                entry.resumeDestination = download.isResumable() ? download.getDestination() : null;
+                queue(entry.queue).waiting.add(entry);
+                requeued = true;
+            }
+            dispatchLater();
+        }
+        Listener current = listener;
+        if (requeued && current != null) {
+            current.requeued(entry);
+        }
+    }
+
+    private void notifyFailed(Entry entry, IOException error) {
+        Listener current = listener;
+        if (current != null) {
+            current.failed(entry, error);
+        }
+    }
+
+    //sets the engine's speed cap from the window the current time falls into
+    private void applySpeedLimit() {
+        long limit;
+        synchronized (this) {
+            limit = speedLimit;
+            LocalTime now = LocalTime.now();
+            for (SpeedWindow window : speedWindows) {
+                if (window.contains(now)) {
+                    limit = window.getBytesPerSecond();
+                    break;
+                }
+            }
+        }
+        engine.getBandwidthLimiter().setBytesPerSecond(limit);
+    }
+}
@@ -0,0 +1,494 @@
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Trigram index over the file name, description and path of the downloads table, for the
+ * search box. Every row's lowercased texts are cut into overlapping three-letter pieces, and
+ * each piece keeps the ids of the rows containing it. A query intersects the lists of its own
+ * pieces and checks only the rows left, instead of every cell of every row.
+ * <p>
+ * The index follows the model through its events: inserts are indexed, updates re-indexed if
+ * an indexed text changed, and removed rows are skipped at query time until there are enough
+ * of them to rebuild. Memory stays within a budget: a piece found in a large share of the rows
+ * says little about a match, so its list is dropped, and when the index outgrows the budget the
+ * longest lists go first. Dropped pieces only make queries check more rows, never change the
+ * result. Queries shorter than three letters check every row. Used on the EDT only.
+ */
+public final class DownloadSearchIndex implements TableModelListener {
+
+    private static final int[] INDEXED_COLUMNS = {DownloadTableModel.COL_FILE_NAME, DownloadTableModel.COL_DESCRIPTION, DownloadTableModel.COL_PATH};
+    //a piece in more than 1/COMMON_SHARE of the rows (like the base folder in every path) is dropped,
+    //once there are enough rows to tell
+    private static final int COMMON_SHARE = 2;
+    private static final int COMMON_MIN_ROWS = 4096;
+    //removed or changed rows tolerated before the lists are rebuilt
+    private static final int STALE_MIN_ROWS = 50_000;
+    //rough per-object costs for the memory estimate
+    private static final int LIST_OVERHEAD_BYTES = 48;
+    private static final int SLOT_BYTES = 12;
+
+    private static final Metrics.Histogram QUERY_LATENCY = Metrics.histogram("search.query");
+    private static final Metrics.Histogram REBUILD_LATENCY = Metrics.histogram("search.rebuild");
+
+    private final DownloadTableModel model;
+    private final long budgetBytes;
+
+    //open addressing from a packed trigram to its id list; a null list with a key marks a dropped piece
+    private long[] keys;
+    private IdList[] lists;
+    private boolean[] used;
+    private int slotCount;
+    private long listBytes;
+    private int droppedCount;
+    //hash of the indexed texts of each row id, 0 if the row is not indexed
+    private int[] rowHashes = new int[1024];
+    private int staleRows;
+    private boolean disabled;
+
+    /**
+     * Ids of the rows containing one trigram. Ids arrive in increasing order as rows are added, so
+     * they are kept as variable-length gaps, mostly one byte each; the few that arrive out of order,
+     * from re-indexed rows, are kept aside and merged in when the list is read.
+     */
+    private static final class IdList {
+        byte[] gaps = new byte[4];
+        int length;
+        int size;
+        int lastId = -1;
+        int[] late;
+        int lateSize;
+
+        //returns the number of bytes the list grew by
+        int add(int id) {
+            if (id == lastId) {
+                return 0;
+            }
+            int before = bytes();
+            if (id < lastId) {
+                if (late == null) {
+                    late = new int[2];
+                } else if (lateSize == late.length) {
+                    late = Arrays.copyOf(late, lateSize * 2);
+                }
+                late[lateSize++] = id;
+            } else {
+                if (length + 5 > gaps.length) {
+                    gaps = Arrays.copyOf(gaps, Math.max(length + 5, gaps.length + (gaps.length >> 1)));
+                }
+                int gap = id - lastId;
+                while (gap >= 0x80) {
+                    gaps[length++] = (byte) (gap | 0x80);
+                    gap >>>= 7;
+                }
+                gaps[length++] = (byte) gap;
+                lastId = id;
+            }
+            size++;
+            return bytes() - before;
+        }
+
+        int bytes() {
+            return gaps.length + (late != null ? late.length * 4 : 0);
+        }
+
+        //all ids ascending, without duplicates
+        int[] decode() {
+            int[] ids = new int[size];
+            int count = 0;
+            int id = -1;
+            for (int i = 0; i < length; ) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = gaps[i++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += gap;
+                ids[count++] = id;
+            }
+            if (lateSize == 0) {
+                return ids;
+            }
+            System.arraycopy(late, 0, ids, count, lateSize);
+            Arrays.sort(ids);
+            int unique = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (unique == 0 || ids[unique - 1] != ids[i]) {
+                    ids[unique++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(ids, unique);
+        }
+    }
+
+    public DownloadSearchIndex(DownloadTableModel model, long budgetBytes) {
+        this.model = model;
+        this.budgetBytes = budgetBytes;
+        clear();
+        indexRows(0, model.getRowCount() - 1);
+        model.addTableModelListener(this);
+    }
+
+    /**
+     * Ids of the rows whose file name, description or path contains query, ignoring case,
+     * in ascending order. A blank query matches nothing; callers treat it as no filter.
+     */
+    public long[] search(String query) {
+        long start = Metrics.start();
+        String needle = lowerCase(query.trim());
+        if (needle.isEmpty()) {
+            return new long[0];
+        }
+        int[] candidates = disabled ? null : candidates(needle);
+        long[] matches = new long[candidates != null ? candidates.length : model.getRowCount()];
+        int count = 0;
+        if (candidates != null) {
+            //a three-letter query is one piece: its list is the answer while no row was removed or changed.
+            //Otherwise every candidate is checked, the lists still hold the ids of rows whose old texts had the piece
+            boolean exact = needle.length() == 3 && staleRows == 0;
+            for (int id : candidates) {
+                if (exact) {
+                    matches[count++] = id;
+                    continue;
+                }
+                int row = model.rowForId(id);
+                if (row >= 0 && matches(row, needle)) {
+                    matches[count++] = id;
+                }
+            }
+        } else {
+            for (int row = 0; row < model.getRowCount(); row++) {
+                if (matches(row, needle)) {
+                    matches[count++] = model.getRowId(row);
+                }
+            }
+        }
+        QUERY_LATENCY.recordSince(start);
+        return Arrays.copyOf(matches, count);
+    }
+
+    //tests single model rows the way search does, e.g. rows added after a search
+    public IntPredicate matcher(String query) {
+        String needle = lowerCase(query.trim());
+        return row -> !needle.isEmpty() && matches(row, needle);
+    }
+
+    //estimated size of the index
+    public long getMemoryBytes() {
+        return listBytes + (long) keys.length * SLOT_BYTES + (long) rowHashes.length * 4;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    //e.g. "Search index: 41,203 trigrams (12 dropped), 18.4 MB of 64.0 MB"
+    public String describe() {
+        if (disabled) {
+            return "Search index: off, the row ids no longer fit its budget; searches check every row";
+        }
+        return String.format("Search index: %,d trigrams (%,d dropped), %s of %s", slotCount - droppedCount, droppedCount,
+                FolderStatsCache.formatBytes(getMemoryBytes()), FolderStatsCache.formatBytes(budgetBytes));
+    }
+
+    // --- Following the model ---
+
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        if (e instanceof DownloadTableModel.TransientUpdateEvent) {
+            return;
+        }
+        int first = e.getFirstRow();
+        int last = e.getLastRow();
+        if (first == TableModelEvent.HEADER_ROW || last == Integer.MAX_VALUE) {
+            rebuild();
+            return;
+        }
+        switch (e.getType()) {
+            case TableModelEvent.INSERT:
+                indexRows(first, last);
+                break;
+            case TableModelEvent.UPDATE:
+                int column = e.getColumn();
+                if (column == TableModelEvent.ALL_COLUMNS || column == DownloadTableModel.COL_FILE_NAME
+                        || column == DownloadTableModel.COL_DESCRIPTION || column == DownloadTableModel.COL_PATH) {
+                    indexRows(first, last);
+                }
+                break;
+            case TableModelEvent.DELETE:
+                staleRows += last - first + 1;
+                break;
+            default:
+                return;
+        }
+        if (staleRows > STALE_MIN_ROWS && staleRows > model.getRowCount()) {
+            rebuild();
+        } else if (getMemoryBytes() > budgetBytes) {
+            trimToBudget();
+        }
+    }
+
+    private void rebuild() {
+        long start = Metrics.start();
+        clear();
+        indexRows(0, model.getRowCount() - 1);
+        REBUILD_LATENCY.recordSince(start);
+    }
+
+    private void clear() {
+        keys = new long[1024];
+        lists = new IdList[1024];
+        used = new boolean[1024];
+        slotCount = 0;
+        listBytes = 0;
+        droppedCount = 0;
+        Arrays.fill(rowHashes, 0);
+        staleRows = 0;
+        disabled = false;
+    }
+
+    private void indexRows(int first, int last) {
+        if (disabled) {
+            return;
+        }
+        for (int row = first; row <= last; row++) {
+            long rowId = model.getRowId(row);
+            if (rowId >= Integer.MAX_VALUE || (rowId + 1) * 4 > budgetBytes) {
+                //ids only grow within a session, the index cannot follow any more
+                disabled = true;
+                keys = new long[0];
+                lists = new IdList[0];
+                used = new boolean[0];
+                rowHashes = new int[0];
+                listBytes = 0;
+                return;
+            }
+            int id = (int) rowId;
+            Object[] texts = new Object[INDEXED_COLUMNS.length];
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = model.getValueAt(row, INDEXED_COLUMNS[i]);
+            }
+            int hash = hashOf(texts);
+            if (id >= rowHashes.length) {
+                rowHashes = Arrays.copyOf(rowHashes, Math.max(id + 1, rowHashes.length * 2));
+            }
+            if (rowHashes[id] == hash) {
+                continue;
+            }
+            if (rowHashes[id] != 0) {
+                //the old texts' pieces still list the row, queries check it anyway
+                staleRows++;
+            }
+            rowHashes[id] = hash;
+            for (Object text : texts) {
+                if (text != null) {
+                    indexText(text.toString(), id);
+                }
+            }
+        }
+    }
+
+    private void indexText(String text, int id) {
+        if (text.length() < 3) {
+            return;
+        }
+        long key = ((long) Character.toLowerCase(text.charAt(0)) << 16) | Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < text.length(); i++) {
+            //rolling: drop the oldest letter, add the next one
+            key = ((key << 16) | Character.toLowerCase(text.charAt(i))) & 0xFFFF_FFFF_FFFFL;
+            int slot = slotOf(key, true);
+            if (lists[slot] == null) {
+                //a dropped piece
+                continue;
+            }
+            IdList list = lists[slot];
+            listBytes += list.add(id);
+            if (list.size > COMMON_MIN_ROWS && list.size > model.getRowCount() / COMMON_SHARE) {
+                drop(slot);
+            }
+        }
+    }
+
+    //drops the longest lists until the index uses at most three quarters of its budget
+    private void trimToBudget() {
+        int[] bySize = new int[slotCount - droppedCount];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot] && lists[slot] != null) {
+                bySize[count++] = slot;
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = bySize[i];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(lists[b].bytes(), lists[a].bytes()));
+        for (int i = 0; i < count && getMemoryBytes() > budgetBytes * 3 / 4; i++) {
+            drop(order[i]);
+        }
+    }
+
+    private void drop(int slot) {
+        listBytes -= lists[slot].bytes() + LIST_OVERHEAD_BYTES;
+        lists[slot] = null;
+        droppedCount++;
+    }
+
+    // --- Querying ---
+
+    //candidate ids for needle from its pieces' lists, null if no piece narrows it down
+    private int[] candidates(String needle) {
+        IdList[] needed = new IdList[Math.max(0, needle.length() - 2)];
+        int count = 0;
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            int slot = slotOf(trigram(needle, i), false);
+            if (slot < 0) {
+                //a piece no row contains
+                return new int[0];
+            }
+            if (lists[slot] != null) {
+                needed[count++] = lists[slot];
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        //shortest list first, every step can only shrink the candidates
+        Arrays.sort(needed, 0, count, (a, b) -> Integer.compare(a.size, b.size));
+        int[] result = needed[0].decode();
+        int size = result.length;
+        for (int i = 1; i < count && size > 0; i++) {
+            size = intersect(result, size, needed[i].decode());
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    //keeps the ids of result that are also in ids, both ascending; returns how many are left
+    private static int intersect(int[] result, int size, int[] ids) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            int id = result[i];
+            //gallop: long lists are mostly skipped over
+            int step = 1;
+            while (j + step < ids.length && ids[j + step] < id) {
+                j += step;
+                step <<= 1;
+            }
+            while (j < ids.length && ids[j] < id) {
+                j++;
+            }
+            if (j < ids.length && ids[j] == id) {
+                result[kept++] = id;
+            }
+        }
+        return kept;
+    }
+
+    //hash of a row's indexed texts, never 0
+    private static int hashOf(Object[] texts) {
+        int hash = Arrays.hashCode(texts);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private boolean matches(int row, String needle) {
+        for (int column : INDEXED_COLUMNS) {
+            Object value = model.getValueAt(row, column);
+            if (value != null && containsIgnoreCase(value.toString(), needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsIgnoreCase(String text, String lowerNeedle) {
+        char first = lowerNeedle.charAt(0);
+        int length = lowerNeedle.length();
+        int last = text.length() - length;
+        for (int i = 0; i <= last; i++) {
+            if (Character.toLowerCase(text.charAt(i)) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < length && Character.toLowerCase(text.charAt(i + j)) == lowerNeedle.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // --- Trigram table ---
+
+    private static long trigram(String text, int at) {
+        return ((long) Character.toLowerCase(text.charAt(at)) << 32)
+                | ((long) Character.toLowerCase(text.charAt(at + 1)) << 16)
+                | Character.toLowerCase(text.charAt(at + 2));
+    }
+
+    private static String lowerCase(String text) {
+        StringBuilder lower = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            lower.append(Character.toLowerCase(text.charAt(i)));
+        }
+        return lower.toString();
+    }
+
+    //slot of key, added with an empty list if create is set; -1 if absent and not created
+    private int slotOf(long key, boolean create) {
+        int mask = keys.length - 1;
+        int slot = (int) (mix(key) & mask);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+        if ((slotCount + 1) * 4 > keys.length * 3) {
+            grow();
+            return slotOf(key, true);
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        lists[slot] = new IdList();
+        listBytes += lists[slot].bytes() + LIST_OVERHEAD_BYTES;
+        slotCount++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        IdList[] oldLists = lists;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        lists = new IdList[keys.length];
+        used = new boolean[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = (int) (mix(oldKeys[i]) & mask);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                lists[slot] = oldLists[i];
+            }
+        }
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 29);
+    }
+}
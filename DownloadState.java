@@ -0,0 +1,231 @@
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Transfer state of one download, persisted so it can resume after a stop, crash or reboot.
+ * The file is cut into fixed blocks and a bitmap records which blocks are on disk; together with
+ * the server's validators (ETag, Last-Modified, length) this tells a resumed download exactly
+ * which byte ranges are still missing and whether the parts it has still belong to the same file.
+ * One small file per download, named after its destination, written atomically with a CRC.
+ */
+public final class DownloadState {
+
+    public static final int BLOCK_BYTES = 1024 * 1024;
+    private static final int MAGIC = 0x46534453; // FSDS
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".state";
+
+    private final Path file;
+    private final String url;
+    private final Path destination;
+    private final long length;
+    private final String etag;
+    private final String lastModified;
+    private final int connections;
+    private final BitSet completed;
+
+    public DownloadState(Path directory, String url, Path destination, long length, String etag, String lastModified, int connections) {
+        this(fileFor(directory, destination), url, destination, length, etag, lastModified, connections, new BitSet());
+    }
+
+    private DownloadState(Path file, String url, Path destination, long length, String etag, String lastModified, int connections,
+                          BitSet completed) {
+        this.file = file;
+        this.url = url;
+        this.destination = destination;
+        this.length = length;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.connections = connections;
+        this.completed = completed;
+    }
+
+    //state file of the download writing to destination, the name is stable across restarts
+    public static Path fileFor(Path directory, Path destination) {
+        String key = destination.toAbsolutePath().normalize().toString();
+        return directory.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + SUFFIX);
+    }
+
+    /**
+     * Reads the state of the download writing to destination, or null if there is none.
+     * A damaged state file is treated as missing, the download then starts over.
+     */
+    public static DownloadState load(Path directory, Path destination) throws IOException {
+        Path file = fileFor(directory, destination);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+        if (bytes.length < 8) {
+            return null;
+        }
+        //the checksum comes first, so nothing of a damaged file is ever parsed
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            String url = in.readUTF();
+            Path stored = Paths.get(in.readUTF());
+            long length = in.readLong();
+            String etag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            int connections = in.readInt();
+            int blockBytes = in.readInt();
+            int wordCount = in.readInt();
+            if (blockBytes != BLOCK_BYTES || wordCount < 0 || wordCount > in.available() / 8) {
+                return null;
+            }
+            long[] words = new long[wordCount];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return new DownloadState(file, url, stored, length, etag, lastModified, connections, BitSet.valueOf(words));
+        } catch (IOException | RuntimeException ex) {
+            //e.g. a file written by a future version with a matching checksum but another layout
+            return null;
+        }
+    }
+
+    //writes the given bitmap snapshot; callers make sure the blocks in it are on disk first
+    public void save(BitSet snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + snapshot.size() / 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(url);
+            out.writeUTF(destination.toString());
+            out.writeLong(length);
+            out.writeUTF(etag != null ? etag : "");
+            out.writeUTF(lastModified != null ? lastModified : "");
+            out.writeInt(connections);
+            out.writeInt(BLOCK_BYTES);
+            long[] words = snapshot.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(crc.getValue());
+        }
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            bytes.writeTo(out);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    //true if the server still describes the same file the stored blocks came from
+    public boolean matches(DownloadEngine.RemoteFile remote) {
+        if (remote.getLength() != length || !remote.isAcceptsRanges()) {
+            return false;
+        }
+        if (etag != null || remote.getEtag() != null) {
+            return etag != null && etag.equals(remote.getEtag());
+        }
+        return lastModified != null && lastModified.equals(remote.getLastModified());
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Path getDestination() {
+        return destination;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getBlockCount() {
+        return (int) ((length + BLOCK_BYTES - 1) / BLOCK_BYTES);
+    }
+
+    //bytes covered by completed blocks
+    public synchronized long getCompletedBytes() {
+        long bytes = (long) completed.cardinality() * BLOCK_BYTES;
+        int last = getBlockCount() - 1;
+        if (last >= 0 && completed.get(last)) {
+            //the last block is usually short
+            bytes -= (long) (last + 1) * BLOCK_BYTES - length;
+        }
+        return bytes;
+    }
+
+    public synchronized void markCompleted(int fromBlock, int toBlock) {
+        completed.set(fromBlock, toBlock);
+    }
+
+    public synchronized void clear() {
+        completed.clear();
+    }
+
+    public synchronized BitSet snapshot() {
+        return (BitSet) completed.clone();
+    }
+
+    //byte ranges [start, end) of the blocks that are not on disk yet, in file order
+    public synchronized List<long[]> missingRanges() {
+        List<long[]> ranges = new ArrayList<>();
+        int blocks = getBlockCount();
+        for (int block = completed.nextClearBit(0); block < blocks; ) {
+            int end = Math.min(blocks, completed.nextSetBit(block) < 0 ? blocks : completed.nextSetBit(block));
+            ranges.add(new long[]{(long) block * BLOCK_BYTES, Math.min(length, (long) end * BLOCK_BYTES)});
+            block = completed.nextClearBit(end);
+        }
+        return ranges;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,659 @@
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Column-oriented table model for the downloads list.
+ * Instead of a Vector of boxed String cells per row, every column lives in its own array:
+ * sizes and timestamps as primitive longs, statuses as byte codes into a shared dictionary,
+ * paths as an interned directory id plus the file name, and repeated texts (descriptions,
+ * "N/A") interned. Cells are rendered to the same strings the table always showed, so the
+ * journal and the UI see no difference.
+ * Every row has a stable id, and the model keeps the ids of each directory's rows, so asking for
+ * the entries below a folder costs time in the matching entries rather than in the table size.
+ */
+public class DownloadTableModel extends AbstractTableModel {
+
+    public static final int COL_FILE_NAME = 0;
+    public static final int COL_SIZE = 1;
+    public static final int COL_STATUS = 2;
+    public static final int COL_TIME_LEFT = 3;
+    public static final int COL_TRANSFER_RATE = 4;
+    public static final int COL_LAST_TRY = 5;
+    public static final int COL_DESCRIPTION = 6;
+    public static final int COL_PATH = 7;
+
+    private static final String[] COLUMN_NAMES = {"File Name", "Size", "Status", "Time Left",
+            "Transfer Rate", "Last Try Date", "Description", "Path"};
+    private static final String NOT_AVAILABLE = "N/A";
+    private static final String SIZE_SUFFIX = " bytes";
+    //"yyyy-MM-dd HH:mm", strict so only real dates parse
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm")
+            .withResolverStyle(ResolverStyle.STRICT);
+    private static final long UNKNOWN = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    //descriptions like "Duplicate of: <path>" are unique, so the intern map is dropped when it grows past this
+    private static final int MAX_INTERNED = 4096;
+
+    //status texts are few, rows store a byte index into this list
+    private final List<String> statuses = new ArrayList<>(List.of("Imported", "Completed", "Downloading", "Stopped", "Queued", "Error", "Missing"));
+    private final Map<String, Byte> statusCodes = new HashMap<>();
+    //directories of all paths, rows store an index into this list
+    private final List<String> directories = new ArrayList<>();
+    //sorted, so all directories below a folder form one contiguous range
+    private final TreeMap<String, Integer> directoryIds = new TreeMap<>();
+    //ids of the rows in each directory, parallel to directories
+    private final List<RowIdList> directoryRows = new ArrayList<>();
+    //repeated free texts share one String instance, rows keep their strings when it is cleared
+    private final Map<String, String> interned = new HashMap<>();
+    //cells whose text cannot be stored in typed form, keyed by row id and column
+    private final Map<Long, String> overrides = new HashMap<>();
+
+    private int rowCount;
+    private String[] fileNames = new String[INITIAL_CAPACITY];
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private byte[] statusIds = new byte[INITIAL_CAPACITY];
+    private String[] timeLefts = new String[INITIAL_CAPACITY];
+    private String[] transferRates = new String[INITIAL_CAPACITY];
+    private long[] lastTries = new long[INITIAL_CAPACITY];
+    private String[] descriptions = new String[INITIAL_CAPACITY];
+    private int[] directoryOfRow = new int[INITIAL_CAPACITY];
+    private String[] leafNames = new String[INITIAL_CAPACITY];
+    //stable identity of each row, independent of its position
+    private long[] rowIds = new long[INITIAL_CAPACITY];
+    private long nextRowId;
+    //last date rendered, rows imported together share their minute
+    private long renderedLastTry = UNKNOWN;
+    private String renderedLastTryText;
+
+    public DownloadTableModel() {
+        for (int i = 0; i < statuses.size(); i++) {
+            statusCodes.put(statuses.get(i), (byte) i);
+        }
+    }
+
+    //copies the cells of source, see snapshot()
+    private DownloadTableModel(DownloadTableModel source) {
+        statuses.clear();
+        statuses.addAll(source.statuses);
+        directories.addAll(source.directories);
+        overrides.putAll(source.overrides);
+        rowCount = source.rowCount;
+        fileNames = Arrays.copyOf(source.fileNames, rowCount);
+        sizes = Arrays.copyOf(source.sizes, rowCount);
+        statusIds = Arrays.copyOf(source.statusIds, rowCount);
+        timeLefts = Arrays.copyOf(source.timeLefts, rowCount);
+        transferRates = Arrays.copyOf(source.transferRates, rowCount);
+        lastTries = Arrays.copyOf(source.lastTries, rowCount);
+        descriptions = Arrays.copyOf(source.descriptions, rowCount);
+        directoryOfRow = Arrays.copyOf(source.directoryOfRow, rowCount);
+        leafNames = Arrays.copyOf(source.leafNames, rowCount);
+        rowIds = Arrays.copyOf(source.rowIds, rowCount);
+    }
+
+    /**
+     * A copy of the current cells for reading on another thread, e.g. to write them to disk.
+     * Only the column arrays are copied, so this is cheap enough for the EDT even with a million
+     * rows; rendering the cells to text is left to whoever reads the copy. The copy is read-only.
+     */
+    public TableModel snapshot() {
+        return new DownloadTableModel(this);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        checkRow(row);
+        if (column == COL_SIZE || column == COL_LAST_TRY) {
+            String override = overrides.get(overrideKey(rowIds[row], column));
+            if (override != null) {
+                return override;
+            }
+        }
+        switch (column) {
+            case COL_FILE_NAME:
+                return fileNames[row];
+            case COL_SIZE:
+                return sizes[row] == UNKNOWN ? NOT_AVAILABLE : sizes[row] + SIZE_SUFFIX;
+            case COL_STATUS:
+                return statuses.get(statusIds[row] & 0xFF);
+            case COL_TIME_LEFT:
+                return timeLefts[row];
+            case COL_TRANSFER_RATE:
+                return transferRates[row];
+            case COL_LAST_TRY:
+                return lastTries[row] == UNKNOWN ? NOT_AVAILABLE : formatDate(lastTries[row]);
+            case COL_DESCRIPTION:
+                return descriptions[row];
+            case COL_PATH:
+                return getPath(row);
+            default:
+                throw new IndexOutOfBoundsException("column " + column);
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        checkRow(row);
+        store(row, column, value == null ? null : value.toString());
+        fireTableCellUpdated(row, column);
+    }
+
+    //changes several cells of one row with a single update event, nothing is fired if no cell changed
+    public void setValues(int row, int[] columns, Object[] values) {
+        checkRow(row);
+        boolean changed = false;
+        for (int i = 0; i < columns.length; i++) {
+            String text = values[i] == null ? null : values[i].toString();
+            if (!Objects.equals(text, getValueAt(row, columns[i]))) {
+                store(row, columns[i], text);
+                changed = true;
+            }
+        }
+        if (changed) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /**
+     * Sets the time left or transfer rate of a running transfer without firing an event.
+     * These texts change many times a second, so they are not interned; callers publish a batch
+     * of them with {@link #fireTransientRowsUpdated}. Returns true if the cell changed.
+     */
+    public boolean putTransient(int row, int column, String text) {
+        checkRow(row);
+        String[] cells;
+        if (column == COL_TIME_LEFT) {
+            cells = timeLefts;
+        } else if (column == COL_TRANSFER_RATE) {
+            cells = transferRates;
+        } else {
+            throw new IllegalArgumentException("Not a transient column: " + column);
+        }
+        if (Objects.equals(cells[row], text)) {
+            return false;
+        }
+        cells[row] = NOT_AVAILABLE.equals(text) ? NOT_AVAILABLE : text;
+        return true;
+    }
+
+    //one repaint for the rows changed by putTransient, which listeners that persist rows can skip
+    public void fireTransientRowsUpdated(int firstRow, int lastRow) {
+        fireTableChanged(new TransientUpdateEvent(this, firstRow, lastRow));
+    }
+
+    /**
+     * Update of display-only cells (speed, time left). The rows' lasting values did not change.
+     */
+    public static final class TransientUpdateEvent extends TableModelEvent {
+        TransientUpdateEvent(DownloadTableModel source, int firstRow, int lastRow) {
+            super(source, firstRow, lastRow);
+        }
+    }
+
+    // --- Typed accessors ---
+
+    public long getSize(int row) {
+        checkRow(row);
+        return sizes[row];
+    }
+
+    public String getStatus(int row) {
+        checkRow(row);
+        return statuses.get(statusIds[row] & 0xFF);
+    }
+
+    public String getPath(int row) {
+        checkRow(row);
+        if (directoryOfRow[row] < 0) {
+            return leafNames[row];
+        }
+        return directories.get(directoryOfRow[row]) + leafNames[row];
+    }
+
+    //cell texts of a row in column order, as addRow takes them
+    public Object[] getRowValues(int row) {
+        Object[] values = new Object[COLUMN_NAMES.length];
+        for (int column = 0; column < values.length; column++) {
+            values[column] = getValueAt(row, column);
+        }
+        return values;
+    }
+
+    public long getRowId(int row) {
+        checkRow(row);
+        return rowIds[row];
+    }
+
+    //current model row of a row id, or -1 if the row has been removed
+    public int rowForId(long rowId) {
+        //ids are handed out in increasing order and rows never move past each other
+        int row = Arrays.binarySearch(rowIds, 0, rowCount, rowId);
+        return row >= 0 ? row : -1;
+    }
+
+    // --- Folder queries ---
+
+    //ids of the rows whose path is folder itself or lies anywhere below it, ascending
+    public long[] rowIdsUnder(String folder) {
+        RowIdList result = new RowIdList();
+        String prefix = folder.endsWith(File.separator) ? folder : folder + File.separator;
+        for (int id : directoryIds.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            result.addAll(directoryRows.get(id));
+        }
+        //an entry for the folder path itself sits in the parent directory
+        String self = prefix.substring(0, prefix.length() - 1);
+        int split = self.lastIndexOf(File.separatorChar) + 1;
+        Integer parent = split > 0 ? directoryIds.get(self.substring(0, split)) : null;
+        if (parent != null) {
+            String leaf = self.substring(split);
+            RowIdList siblings = directoryRows.get(parent);
+            for (int i = 0; i < siblings.size; i++) {
+                int row = rowForId(siblings.ids[i]);
+                if (leaf.equals(leafNames[row])) {
+                    result.append(siblings.ids[i]);
+                }
+            }
+        }
+        long[] ids = Arrays.copyOf(result.ids, result.size);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    //model rows whose path is folder itself or lies anywhere below it, ascending
+    public int[] rowsUnder(String folder) {
+        long[] ids = rowIdsUnder(folder);
+        int[] rows = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            rows[i] = rowForId(ids[i]);
+        }
+        //ids and rows are in the same order
+        return rows;
+    }
+
+    //ids of the rows directly in directory, which ends with the separator, ascending
+    public long[] rowIdsIn(String directory) {
+        Integer id = directoryIds.get(directory);
+        if (id == null) {
+            return new long[0];
+        }
+        RowIdList rows = directoryRows.get(id);
+        return Arrays.copyOf(rows.ids, rows.size);
+    }
+
+    //whether a row's path is folder itself or lies anywhere below it, as rowIdsUnder decides
+    public boolean isUnder(int row, String folder) {
+        checkRow(row);
+        if (directoryOfRow[row] < 0) {
+            return false;
+        }
+        String prefix = folder.endsWith(File.separator) ? folder : folder + File.separator;
+        String directory = directories.get(directoryOfRow[row]);
+        if (directory.startsWith(prefix)) {
+            return true;
+        }
+        return directory.length() + leafNames[row].length() == prefix.length() - 1
+                && prefix.startsWith(directory) && prefix.startsWith(leafNames[row], directory.length());
+    }
+
+    //directories at or below folder that have rows, each ending with the separator
+    public List<String> directoriesUnder(String folder) {
+        String prefix = folder.endsWith(File.separator) ? folder : folder + File.separator;
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : directoryIds.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+            if (directoryRows.get(entry.getValue()).size > 0) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    //file name part of a row's path
+    public String getLeafName(int row) {
+        checkRow(row);
+        return leafNames[row];
+    }
+
+    //number of entries in folder and everything below it, without touching the rows
+    public int countUnder(String folder) {
+        String prefix = folder.endsWith(File.separator) ? folder : folder + File.separator;
+        int count = 0;
+        for (int id : directoryIds.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            count += directoryRows.get(id).size;
+        }
+        return count;
+    }
+
+    // --- Mutations ---
+
+    //appends one row of cell texts in column order
+    public void addRow(Object[] values) {
+        int row = rowCount;
+        appendRow(values);
+        fireTableRowsInserted(row, row);
+    }
+
+    //appends many rows with a single TableModelEvent
+    public void addRows(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int first = rowCount;
+        ensureCapacity(rowCount + rows.size());
+        for (Object[] values : rows) {
+            appendRow(values);
+        }
+        fireTableRowsInserted(first, rowCount - 1);
+    }
+
+    public void removeRow(int row) {
+        checkRow(row);
+        removeRange(row, row);
+        fireTableRowsDeleted(row, row);
+    }
+
+    /**
+     * Removes the given model rows, in any order, with one event per contiguous run of rows.
+     * Runs are removed from the bottom up so the indexes in each event stay valid.
+     */
+    public void removeRows(int[] rows) {
+        if (rows.length == 0) {
+            return;
+        }
+        int[] sorted = rows.clone();
+        Arrays.sort(sorted);
+        int end = sorted.length - 1;
+        while (end >= 0) {
+            int start = end;
+            while (start > 0 && sorted[start - 1] >= sorted[start] - 1) {
+                start--;
+            }
+            int first = sorted[start];
+            int last = sorted[end];
+            checkRow(last);
+            removeRange(first, last);
+            fireTableRowsDeleted(first, last);
+            end = start - 1;
+        }
+    }
+
+    // --- Storage ---
+
+    private void appendRow(Object[] values) {
+        ensureCapacity(rowCount + 1);
+        int row = rowCount++;
+        rowIds[row] = nextRowId++;
+        //the slot may still hold the directory of a removed row
+        directoryOfRow[row] = -1;
+        for (int column = 0; column < COLUMN_NAMES.length; column++) {
+            Object value = column < values.length ? values[column] : null;
+            store(row, column, value == null ? null : value.toString());
+        }
+    }
+
+    private void store(int row, int column, String text) {
+        switch (column) {
+            case COL_FILE_NAME:
+                fileNames[row] = text;
+                break;
+            case COL_SIZE:
+                overrides.remove(overrideKey(rowIds[row], column));
+                sizes[row] = parseSize(text);
+                if (sizes[row] == UNKNOWN && text != null && !NOT_AVAILABLE.equals(text)) {
+                    overrides.put(overrideKey(rowIds[row], column), text);
+                }
+                break;
+            case COL_STATUS:
+                statusIds[row] = statusCode(text == null ? "" : text);
+                break;
+            case COL_TIME_LEFT:
+                timeLefts[row] = intern(text);
+                break;
+            case COL_TRANSFER_RATE:
+                transferRates[row] = intern(text);
+                break;
+            case COL_LAST_TRY:
+                overrides.remove(overrideKey(rowIds[row], column));
+                lastTries[row] = parseDate(text);
+                if (lastTries[row] == UNKNOWN && text != null && !NOT_AVAILABLE.equals(text)) {
+                    overrides.put(overrideKey(rowIds[row], column), text);
+                }
+                break;
+            case COL_DESCRIPTION:
+                descriptions[row] = intern(text);
+                break;
+            case COL_PATH:
+                storePath(row, text);
+                break;
+            default:
+                throw new IndexOutOfBoundsException("column " + column);
+        }
+    }
+
+    private void storePath(int row, String path) {
+        if (directoryOfRow[row] >= 0) {
+            directoryRows.get(directoryOfRow[row]).remove(rowIds[row]);
+        }
+        if (path == null) {
+            directoryOfRow[row] = -1;
+            leafNames[row] = null;
+            return;
+        }
+        int split = path.lastIndexOf(File.separatorChar) + 1;
+        if (split == 0) {
+            directoryOfRow[row] = -1;
+            leafNames[row] = path;
+            return;
+        }
+        String directory = path.substring(0, split);
+        Integer id = directoryIds.get(directory);
+        if (id == null) {
+            id = directories.size();
+            directories.add(directory);
+            directoryIds.put(directory, id);
+            directoryRows.add(new RowIdList());
+        }
+        directoryOfRow[row] = id;
+        directoryRows.get(id).add(rowIds[row]);
+        String leaf = path.substring(split);
+        //the leaf is almost always the file name column, share that instance
+        leafNames[row] = leaf.equals(fileNames[row]) ? fileNames[row] : leaf;
+    }
+
+    private void removeRange(int first, int last) {
+        for (int row = first; row <= last; row++) {
+            if (directoryOfRow[row] >= 0) {
+                directoryRows.get(directoryOfRow[row]).remove(rowIds[row]);
+            }
+            overrides.remove(overrideKey(rowIds[row], COL_SIZE));
+            overrides.remove(overrideKey(rowIds[row], COL_LAST_TRY));
+        }
+        int count = last - first + 1;
+        int tail = rowCount - last - 1;
+        System.arraycopy(fileNames, last + 1, fileNames, first, tail);
+        System.arraycopy(sizes, last + 1, sizes, first, tail);
+        System.arraycopy(statusIds, last + 1, statusIds, first, tail);
+        System.arraycopy(timeLefts, last + 1, timeLefts, first, tail);
+        System.arraycopy(transferRates, last + 1, transferRates, first, tail);
+        System.arraycopy(lastTries, last + 1, lastTries, first, tail);
+        System.arraycopy(descriptions, last + 1, descriptions, first, tail);
+        System.arraycopy(directoryOfRow, last + 1, directoryOfRow, first, tail);
+        System.arraycopy(leafNames, last + 1, leafNames, first, tail);
+        System.arraycopy(rowIds, last + 1, rowIds, first, tail);
+        rowCount -= count;
+        //release references so removed texts can be collected
+        Arrays.fill(fileNames, rowCount, rowCount + count, null);
+        Arrays.fill(timeLefts, rowCount, rowCount + count, null);
+        Arrays.fill(transferRates, rowCount, rowCount + count, null);
+        Arrays.fill(descriptions, rowCount, rowCount + count, null);
+        Arrays.fill(leafNames, rowCount, rowCount + count, null);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= fileNames.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, fileNames.length + (fileNames.length >> 1));
+        fileNames = Arrays.copyOf(fileNames, newCapacity);
+        sizes = Arrays.copyOf(sizes, newCapacity);
+        statusIds = Arrays.copyOf(statusIds, newCapacity);
+        timeLefts = Arrays.copyOf(timeLefts, newCapacity);
+        transferRates = Arrays.copyOf(transferRates, newCapacity);
+        lastTries = Arrays.copyOf(lastTries, newCapacity);
+        descriptions = Arrays.copyOf(descriptions, newCapacity);
+        directoryOfRow = Arrays.copyOf(directoryOfRow, newCapacity);
+        leafNames = Arrays.copyOf(leafNames, newCapacity);
+        rowIds = Arrays.copyOf(rowIds, newCapacity);
+    }
+
+    private byte statusCode(String status) {
+        Byte code = statusCodes.get(status);
+        if (code != null) {
+            return code;
+        }
+        if (statuses.size() >= 256) {
+            throw new IllegalStateException("Too many distinct statuses: " + status);
+        }
+        byte newCode = (byte) statuses.size();
+        statuses.add(status);
+        statusCodes.put(status, newCode);
+        return newCode;
+    }
+
+    private String intern(String text) {
+        if (text == null) {
+            return null;
+        }
+        String existing = interned.get(text);
+        if (existing != null) {
+            return existing;
+        }
+        if (interned.size() >= MAX_INTERNED) {
+            interned.clear();
+        }
+        interned.put(text, text);
+        return text;
+    }
+
+    //"123 bytes" as stored by addDownloadEntry
+    private static long parseSize(String text) {
+        if (text == null || !text.endsWith(SIZE_SUFFIX)) {
+            return UNKNOWN;
+        }
+        try {
+            long size = Long.parseLong(text.substring(0, text.length() - SIZE_SUFFIX.length()).trim());
+            return size >= 0 ? size : UNKNOWN;
+        } catch (NumberFormatException ex) {
+            return UNKNOWN;
+        }
+    }
+
+    private String formatDate(long time) {
+        if (time != renderedLastTry) {
+            renderedLastTryText = DATE_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+            renderedLastTry = time;
+        }
+        return renderedLastTryText;
+    }
+
+    private static long parseDate(String text) {
+        if (text == null || NOT_AVAILABLE.equals(text)) {
+            return UNKNOWN;
+        }
+        try {
+            LocalDateTime local = LocalDateTime.parse(text, DATE_FORMAT);
+            long time = local.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            //only texts that format back identically are stored as a timestamp, e.g. not times skipped by daylight saving
+            return DATE_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault())).equals(text) ? time : UNKNOWN;
+        } catch (DateTimeParseException ex) {
+            return UNKNOWN;
+        }
+    }
+
+    private static long overrideKey(long rowId, int column) {
+        return rowId * COLUMN_NAMES.length + column;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + rowCount);
+        }
+    }
+
+    //sorted growable list of row ids, appends are the common case
+    private static final class RowIdList {
+        long[] ids = new long[4];
+        int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int at = size == 0 || ids[size - 1] < id ? size : -Arrays.binarySearch(ids, 0, size, id) - 1;
+            if (at < 0) {
+                return;
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        //appends without keeping the order, for collecting results
+        void append(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void addAll(RowIdList other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + other.size, ids.length * 2));
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        void remove(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * The sorting core shared by the window and the command line.
+ * Classifies files with the category rules (falling back to their content), maps them to
+ * destinationRoot/category/name and feeds them into an import batch. Folders are walked and
+ * streamed into the batch as files are found; nothing here touches AWT or Swing.
+ */
+public final class FileSorter {
+
+    private static final Metrics.Histogram CLASSIFY_LATENCY = Metrics.histogram("classify");
+    private static final Metrics.Histogram SNIFF_LATENCY = Metrics.histogram("classify.sniffed");
+
+    private final Path destinationRoot;
+    private final CategoryRules rules;
+    private final ContentSniffer sniffer;
+
+    //how a set of sources is sorted
+    public static final class Options {
+        private String fixedCategory;
+        private boolean sniffContent = true;
+        private ConflictPolicy conflictPolicy = ConflictPolicy.SKIP;
+        private DirectoryWalker.Options walkOptions = new DirectoryWalker.Options();
+
+        public String getFixedCategory() {
+            return fixedCategory;
+        }
+
+        //puts every file into this category instead of classifying it, null to classify
+        public Options fixedCategory(String fixedCategory) {
+            this.fixedCategory = fixedCategory;
+            return this;
+        }
+
+        public boolean isSniffContent() {
+            return sniffContent;
+        }
+
+        //reads the first bytes of files the rules would put into the default category
+        public Options sniffContent(boolean sniffContent) {
+            this.sniffContent = sniffContent;
+            return this;
+        }
+
+        public ConflictPolicy getConflictPolicy() {
+            return conflictPolicy;
+        }
+
+        public Options conflictPolicy(ConflictPolicy conflictPolicy) {
+            this.conflictPolicy = conflictPolicy;
+            return this;
+        }
+
+        public DirectoryWalker.Options getWalkOptions() {
+            return walkOptions;
+        }
+
+        //filters for folder sources
+        public Options walkOptions(DirectoryWalker.Options walkOptions) {
+            this.walkOptions = walkOptions;
+            return this;
+        }
+    }
+
+    //what submitAll did besides submitting files
+    public static final class SubmitStats {
+        private long conflictsSkipped;
+        private long unreadableEntries;
+
+        //files not submitted because their destination exists and the policy keeps it
+        public long getConflictsSkipped() {
+            return conflictsSkipped;
+        }
+
+        //folder entries that could not be read while walking
+        public long getUnreadableEntries() {
+            return unreadableEntries;
+        }
+    }
+
+    public FileSorter(Path destinationRoot, CategoryRules rules, ContentSniffer sniffer) {
+        this.destinationRoot = destinationRoot;
+        this.rules = rules;
+        this.sniffer = sniffer;
+    }
+
+    public Path getDestinationRoot() {
+        return destinationRoot;
+    }
+
+    /**
+     * Category for a file, falling back to its content when the name says nothing.
+     * Only files that would land in the default category are sniffed, so well named files cost no extra I/O.
+     */
+    public String determineCategory(Path file, long size, long lastModified, boolean sniffContent) {
+        FileSortifyEvents.Classify event = new FileSortifyEvents.Classify();
+        event.begin();
+        long start = Metrics.start();
+        String category = rules.classify(file.getFileName().toString(), size, lastModified);
+        boolean sniffed = false;
+        if (sniffContent && CategoryRules.DEFAULT_CATEGORY.equals(category)) {
+            sniffed = true;
+            String sniffedExtension = sniffer.sniffExtension(file, size, lastModified);
+            if (sniffedExtension != null) {
+                category = rules.classifyExtension(sniffedExtension, size, lastModified);
+            }
+        }
+        (sniffed ? SNIFF_LATENCY : CLASSIFY_LATENCY).recordSince(start);
+        if (event.shouldCommit()) {
+            event.fileName = file.getFileName().toString();
+            event.category = category;
+            event.sniffed = sniffed;
+            event.commit();
+        }
+        return category;
+    }
+
+    //where a file of the given category is sorted to, before conflicts are resolved
+    public Path destinationFor(String category, Path file) {
+        return destinationRoot.resolve(category).resolve(file.getFileName().toString());
+    }
+
+    /**
+     * Starts feeding files into batch: sets the batch's resolver and returns a session that
+     * classifies each submitted file and resolves its destination conflicts. Unless the policy
+     * replaces existing files, files that appear at a destination meanwhile are never overwritten.
+     */
+    public Session open(ImportEngine.Batch batch, Options options) {
+        Session session = new Session(batch, options);
+        batch.setResolver(session::resolve);
+        ConflictPolicy policy = options.getConflictPolicy();
+        if (!policy.replacesExisting()) {
+            batch.setExclusive(task -> policy.resolveAgain(task, session.names));
+        }
+        return session;
+    }
+
+    /**
+     * Submits every file of the given sources to the batch, walking folders recursively.
+     * Files whose name does not classify them are submitted unresolved and sniffed on the
+     * import workers. Runs on the caller's thread and blocks while the batch is saturated.
+     * Stops early if the batch is cancelled.
+     */
+    public SubmitStats submitAll(ImportEngine.Batch batch, List<Path> sources, Options options) throws IOException, InterruptedException {
+        Session session = open(batch, options);
+        for (Path source : sources) {
+            if (Files.isDirectory(source)) {
+                session.stats.unreadableEntries += DirectoryWalker.walk(source, options.getWalkOptions(), session::submit).getErrors();
+            } else if (!session.submit(source, Files.readAttributes(source, BasicFileAttributes.class))) {
+                break;
+            }
+            if (batch.isCancelled()) {
+                break;
+            }
+        }
+        return session.getStats();
+    }
+
+    //feeds one batch, submit() is called from a single producer thread
+    public final class Session {
+        private final ImportEngine.Batch batch;
+        private final Options options;
+        private final SubmitStats stats = new SubmitStats();
+        //names in the destination folders, listed once per folder, plus the destinations handed out
+        private final DestinationNames names = new DestinationNames();
+
+        private Session(ImportEngine.Batch batch, Options options) {
+            this.batch = batch;
+            this.options = options;
+        }
+
+        //classifies file and queues it, returns false if the batch was cancelled
+        public boolean submit(Path file, BasicFileAttributes attributes) throws InterruptedException {
+            String fixedCategory = options.getFixedCategory();
+            String category = fixedCategory != null ? fixedCategory
+                    : determineCategory(file, attributes.size(), attributes.lastModifiedTime().toMillis(), false);
+            if (fixedCategory == null && options.isSniffContent() && CategoryRules.DEFAULT_CATEGORY.equals(category)) {
+                return batch.submit(ImportEngine.ImportTask.unresolved(file, attributes.size()));
+            }
+            Path destination = options.getConflictPolicy().resolve(file, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    destinationFor(category, file), names);
+            if (destination == null) {
+                stats.conflictsSkipped++;
+                return true;
+            }
+            return batch.submit(new ImportEngine.ImportTask(file, destination, category, attributes.size()));
+        }
+
+        //frees a destination once its transfer is over, keeps long-running sessions from growing
+        public void release(Path destination, boolean landed) {
+            names.release(destination, landed);
+        }
+
+        public SubmitStats getStats() {
+            return stats;
+        }
+
+        //runs on the import workers for files submitted unresolved
+        private ImportEngine.ImportTask resolve(ImportEngine.ImportTask task) throws IOException {
+            Path file = task.getSource();
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            String category = determineCategory(file, task.getSize(), lastModified, true);
+            Path destination = options.getConflictPolicy().resolve(file, task.getSize(), lastModified, destinationFor(category, file), names);
+            return destination != null ? task.resolvedTo(destination, category) : null;
+        }
+    }
+}
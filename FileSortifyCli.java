@@ -0,0 +1,589 @@
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless entry point: sorts files into category folders without a display.
+ * "sort" (the default) sorts the given sources once, "watch" keeps sorting files as they land in
+ * the given inbox folders until interrupted. Progress and the final summary are printed to stdout
+ * as one JSON object per line, diagnostics go to stderr. Only the sorting core is loaded, never
+ * AWT or Swing, so it starts quickly on servers.
+ *
+ * Exit codes: 0 everything sorted, 1 some files failed, 2 bad arguments, 3 could not start,
+ * 130 interrupted (Ctrl+C, which is also how watch mode is stopped).
+ */
+public final class FileSortifyCli {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILURES = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_FATAL = 3;
+    static final int EXIT_INTERRUPTED = 130;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: FileSortifyCli [sort] [options] <source>...",
+            "       FileSortifyCli watch [options] <inbox folder>...",
+            "Sorts the given files and folders into <dest>/<category>/. Watch mode moves",
+            "files arriving in the inbox folders as soon as they stop changing.",
+            "",
+            "Options:",
+            "  --dest <dir>          destination root (default: " + FileSortifyPaths.ALL_DOWNLOADS + ")",
+            "  --rules <file>        category rules file (default: " + FileSortifyPaths.RULES_FILE + " if present)",
+            "  --conflict <policy>   skip | overwrite | keep-newer | keep-larger | rename | dedupe-if-identical",
+            "                        when the destination exists (default: skip)",
+            "  --mode <mode>         copy | move | link (default: copy, move when watching)",
+            "  --threads <n>         concurrent transfers (default: up to 4, one per core)",
+            "  --category <name>     put every file into this category",
+            "  --depth <n>           folder depth to walk (default: unlimited)",
+            "  --hidden              include hidden files",
+            "  --follow-links        follow symbolic links",
+            "  --no-sniff            never read file contents to detect the type",
+            "  --progress <millis>   progress interval, 0 to disable (default: 1000)",
+            "  --quiet <millis>      watch: how long a file must stay unchanged (default: 200)",
+            "  --metrics <file>      write operation counters and latencies to this file at the end",
+            "  --dry-run             only plan: print where every file would go, conflicts and the",
+            "                        space needed, without transferring anything",
+            "  --plan <file>         with --dry-run, also write the plan to this CSV file",
+            "  --help                show this help");
+
+    private final PrintStream out;
+
+    FileSortifyCli(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new FileSortifyCli(System.out).run(args));
+    }
+
+    //parsed command line of the sort and watch commands
+    static final class SortOptions {
+        boolean watch;
+        final List<Path> sources = new ArrayList<>();
+        Path destination = Paths.get(FileSortifyPaths.ALL_DOWNLOADS);
+        Path rulesFile;
+        //null picks the command's default
+        FileTransfer.Mode mode;
+        int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        long progressMillis = 1000;
+        long quietMillis = 200;
+        Path metricsFile;
+        boolean dryRun;
+        Path planFile;
+        final FileSorter.Options sortOptions = new FileSorter.Options();
+        final DirectoryWalker.Options walkOptions = new DirectoryWalker.Options();
+    }
+
+    int run(String[] args) {
+        boolean watch = args.length > 0 && "watch".equals(args[0]);
+        int start = watch || (args.length > 0 && "sort".equals(args[0])) ? 1 : 0;
+        SortOptions options;
+        try {
+            options = parse(args, start, watch);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("FileSortifyCli: " + ex.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (options == null) {
+            out.println(USAGE);
+            return EXIT_OK;
+        }
+        return options.watch ? watch(options) : options.dryRun ? dryRun(options) : sort(options);
+    }
+
+    //null means help was requested
+    static SortOptions parse(String[] args, int start, boolean watch) {
+        SortOptions options = new SortOptions();
+        options.watch = watch;
+        options.sortOptions.walkOptions(options.walkOptions);
+        for (int i = start; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help":
+                case "-h":
+                    return null;
+                case "--dest":
+                    options.destination = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--rules":
+                    options.rulesFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--conflict":
+                    options.sortOptions.conflictPolicy(enumValue(ConflictPolicy.class, value(args, ++i, arg), arg));
+                    break;
+                case "--mode":
+                    options.mode = enumValue(FileTransfer.Mode.class, value(args, ++i, arg), arg);
+                    break;
+                case "--threads":
+                    options.threads = intValue(value(args, ++i, arg), arg, 1);
+                    break;
+                case "--category":
+                    options.sortOptions.fixedCategory(value(args, ++i, arg));
+                    break;
+                case "--depth":
+                    options.walkOptions.maxDepth(intValue(value(args, ++i, arg), arg, 1));
+                    break;
+                case "--hidden":
+                    options.walkOptions.includeHidden(true);
+                    break;
+                case "--follow-links":
+                    options.walkOptions.followLinks(true);
+                    break;
+                case "--no-sniff":
+                    options.sortOptions.sniffContent(false);
+                    break;
+                case "--progress":
+                    options.progressMillis = intValue(value(args, ++i, arg), arg, 0);
+                    break;
+                case "--quiet":
+                    options.quietMillis = intValue(value(args, ++i, arg), arg, 1);
+                    break;
+                case "--metrics":
+                    options.metricsFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--dry-run":
+                    options.dryRun = true;
+                    break;
+                case "--plan":
+                    options.planFile = Paths.get(value(args, ++i, arg));
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("unknown option " + arg);
+                    }
+                    options.sources.add(Paths.get(arg));
+            }
+        }
+        if (options.sources.isEmpty()) {
+            throw new IllegalArgumentException("no source files or folders given");
+        }
+        for (Path source : options.sources) {
+            if (!Files.exists(source)) {
+                throw new IllegalArgumentException("source not found: " + source);
+            }
+            if (watch && !Files.isDirectory(source)) {
+                throw new IllegalArgumentException("inbox is not a folder: " + source);
+            }
+        }
+        if (watch && options.dryRun) {
+            throw new IllegalArgumentException("--dry-run cannot be used when watching");
+        }
+        if (options.planFile != null && !options.dryRun) {
+            throw new IllegalArgumentException("--plan needs --dry-run");
+        }
+        if (options.mode == null) {
+            options.mode = watch ? FileTransfer.Mode.MOVE : FileTransfer.Mode.COPY;
+        }
+        if (options.rulesFile != null && !Files.isRegularFile(options.rulesFile)) {
+            throw new IllegalArgumentException("rules file not found: " + options.rulesFile);
+        }
+        return options;
+    }
+
+    //loads the rules and creates the destination, null if that failed
+    private FileSorter createSorter(SortOptions options) {
+        CategoryRules rules;
+        try {
+            rules = loadRules(options.rulesFile);
+            //a dry run leaves the disk as it is
+            if (!options.dryRun) {
+                Files.createDirectories(options.destination);
+            }
+        } catch (IOException ex) {
+            printError(null, "Cannot start: " + ex.getMessage());
+            return null;
+        }
+        for (String problem : rules.getErrors()) {
+            out.println("{\"event\":\"warning\",\"message\":" + json(problem) + "}");
+        }
+        return new FileSorter(options.destination, rules, new ContentSniffer());
+    }
+
+    private int sort(SortOptions options) {
+        FileSorter sorter = createSorter(options);
+        if (sorter == null) {
+            return EXIT_FATAL;
+        }
+        ImportEngine engine = new ImportEngine(options.threads);
+        ImportEngine.Batch batch = engine.newBatch(options.mode);
+        Map<String, Integer> categoryCounts = new TreeMap<>();
+        long[] outcome = new long[2]; //imported, skipped
+        FileSorter.SubmitStats[] submitted = {new FileSorter.SubmitStats()};
+        long[] producerErrors = new long[1];
+
+        //Ctrl+C cancels the batch and waits for the summary, the JVM then exits with 130
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread shutdownHook = new Thread(() -> {
+            batch.cancel();
+            try {
+                finished.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cli-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        Thread producer = new Thread(() -> {
+            try {
+                submitted[0] = sorter.submitAll(batch, options.sources, options.sortOptions);
+            } catch (IOException ex) {
+                printError(null, ex.getMessage());
+                producerErrors[0]++;
+            } catch (InterruptedException ex) {
+                batch.cancel();
+            } finally {
+                batch.close();
+            }
+        }, "cli-producer");
+        producer.start();
+
+        long startNanos = System.nanoTime();
+        try {
+            long nextProgress = startNanos + TimeUnit.MILLISECONDS.toNanos(options.progressMillis);
+            while (!batch.isDone()) {
+                Thread.sleep(50);
+                drain(batch, categoryCounts, outcome);
+                if (options.progressMillis > 0 && System.nanoTime() >= nextProgress) {
+                    printProgress(batch, startNanos);
+                    nextProgress += TimeUnit.MILLISECONDS.toNanos(options.progressMillis);
+                }
+            }
+            producer.join();
+            drain(batch, categoryCounts, outcome);
+        } catch (InterruptedException ex) {
+            batch.cancel();
+            Thread.currentThread().interrupt();
+        }
+
+        outcome[1] += submitted[0].getConflictsSkipped();
+        long unreadable = submitted[0].getUnreadableEntries() + producerErrors[0];
+        String status = batch.isCancelled() ? "cancelled" : batch.getFilesFailed() > 0 || unreadable > 0 ? "failed" : "ok";
+        printSummary(batch, startNanos, status, outcome, unreadable, categoryCounts);
+        dumpMetrics(options);
+        engine.shutdown();
+        finished.countDown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ex) {
+            //already shutting down after Ctrl+C
+            return EXIT_INTERRUPTED;
+        }
+        if (batch.isCancelled()) {
+            return EXIT_INTERRUPTED;
+        }
+        return "ok".equals(status) ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    /**
+     * Plans the sort without transferring anything: one "planned" event per file, then a "plan"
+     * event with the totals per category, conflicts and the space needed on each destination store.
+     * Exits with 1 if some file cannot be read or a destination store is short of space.
+     */
+    private int dryRun(SortOptions options) {
+        FileSorter sorter = createSorter(options);
+        if (sorter == null) {
+            return EXIT_FATAL;
+        }
+        long startNanos = System.nanoTime();
+        SortPlanner.Plan plan;
+        try {
+            plan = new SortPlanner(sorter, options.threads).plan(options.sources, options.sortOptions, options.mode);
+        } catch (IOException ex) {
+            printError(null, ex.getMessage());
+            return EXIT_FAILURES;
+        } catch (InterruptedException ex) {
+            return EXIT_INTERRUPTED;
+        }
+        for (SortPlanner.Entry entry : plan.getEntries()) {
+            out.println("{\"event\":\"planned\""
+                    + ",\"source\":" + json(entry.getSource().toString())
+                    + (entry.getDestination() != null ? ",\"destination\":" + json(entry.getDestination().toString()) : "")
+                    + (entry.getCategory() != null ? ",\"category\":" + json(entry.getCategory()) : "")
+                    + ",\"bytes\":" + entry.getSize()
+                    + ",\"outcome\":" + json(entry.getOutcome().name().toLowerCase(Locale.ROOT))
+                    + (entry.getStrategy() != null ? ",\"strategy\":" + json(entry.getStrategy().name().toLowerCase(Locale.ROOT)) : "")
+                    + (entry.getProblem() != null ? ",\"problem\":" + json(entry.getProblem()) : "")
+                    + "}");
+        }
+        if (options.planFile != null) {
+            try {
+                plan.export(options.planFile);
+            } catch (IOException ex) {
+                printError(options.planFile, "Cannot write plan: " + ex.getMessage());
+            }
+        }
+        StringBuilder categories = new StringBuilder("{");
+        for (Map.Entry<String, SortPlanner.CategoryTotals> entry : plan.getCategories().entrySet()) {
+            categories.append(categories.length() > 1 ? "," : "").append(json(entry.getKey()))
+                    .append(":{\"files\":").append(entry.getValue().getFiles())
+                    .append(",\"bytes\":").append(entry.getValue().getBytes())
+                    .append(",\"conflicts\":").append(entry.getValue().getConflicts()).append('}');
+        }
+        StringBuilder stores = new StringBuilder("[");
+        for (SortPlanner.StoreSpace space : plan.getStores()) {
+            stores.append(stores.length() > 1 ? "," : "").append("{\"store\":").append(json(space.getStore().toString()))
+                    .append(",\"bytesNeeded\":").append(space.getBytesNeeded())
+                    .append(",\"usableBytes\":").append(space.getUsableBytes())
+                    .append(",\"enough\":").append(space.isEnough()).append('}');
+        }
+        long unreadable = plan.getCount(SortPlanner.Outcome.UNREADABLE) + plan.getUnreadableEntries();
+        String status = !plan.hasEnoughSpace() ? "no-space" : unreadable > 0 ? "failed" : "ok";
+        out.println("{\"event\":\"plan\""
+                + ",\"status\":" + json(status)
+                + ",\"files\":" + plan.getFiles()
+                + ",\"bytes\":" + plan.getBytes()
+                + ",\"renamed\":" + plan.getCount(SortPlanner.Outcome.RENAMED)
+                + ",\"replaced\":" + plan.getCount(SortPlanner.Outcome.REPLACED)
+                + ",\"skipped\":" + plan.getCount(SortPlanner.Outcome.SKIPPED)
+                + ",\"unreadable\":" + plan.getCount(SortPlanner.Outcome.UNREADABLE)
+                + ",\"unreadableEntries\":" + plan.getUnreadableEntries()
+                + ",\"elapsedSeconds\":" + number((System.nanoTime() - startNanos) / 1e9)
+                + ",\"categories\":" + categories.append('}')
+                + ",\"stores\":" + stores.append(']')
+                + "}");
+        out.flush();
+        dumpMetrics(options);
+        return "ok".equals(status) ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    /**
+     * Sorts files arriving in the inbox folders until the process is interrupted.
+     * Every sorted file is reported as a "sorted" event; the summary is printed on shutdown.
+     */
+    private int watch(SortOptions options) {
+        FileSorter sorter = createSorter(options);
+        if (sorter == null) {
+            return EXIT_FATAL;
+        }
+        ImportEngine engine = new ImportEngine(options.threads);
+        Map<String, Integer> categoryCounts = new TreeMap<>();
+        long[] outcome = new long[2]; //imported, skipped
+        FolderWatcher watcher;
+        try {
+            watcher = new FolderWatcher(sorter, engine, options.mode, options.sortOptions, options.quietMillis);
+            watcher.setListener(result -> {
+                synchronized (categoryCounts) {
+                    if (result.isSuccess()) {
+                        outcome[0]++;
+                        categoryCounts.merge(result.getTask().getCategory(), 1, Integer::sum);
+                    } else if (result.isSkipped()) {
+                        outcome[1]++;
+                    }
+                }
+                if (result.isSuccess()) {
+                    out.println("{\"event\":\"sorted\""
+                            + ",\"source\":" + json(result.getTask().getSource().toString())
+                            + ",\"destination\":" + json(result.getTask().getDestination().toString())
+                            + ",\"category\":" + json(result.getTask().getCategory())
+                            + ",\"strategy\":" + json(String.valueOf(result.getStrategy())) + "}");
+                } else if (!result.isSkipped()) {
+                    printError(result.getTask().getSource(), result.getError().getMessage());
+                }
+            });
+            for (Path inbox : options.sources) {
+                watcher.addInbox(inbox);
+            }
+        } catch (IOException ex) {
+            printError(null, "Cannot watch: " + ex.getMessage());
+            return EXIT_FATAL;
+        }
+
+        //watching ends with Ctrl+C: stop, let queued files finish, print the summary
+        CountDownLatch stop = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop.countDown();
+            try {
+                finished.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cli-shutdown"));
+
+        long startNanos = System.nanoTime();
+        watcher.start();
+        StringBuilder inboxes = new StringBuilder("[");
+        for (Path inbox : options.sources) {
+            inboxes.append(inboxes.length() > 1 ? "," : "").append(json(inbox.toAbsolutePath().toString()));
+        }
+        out.println("{\"event\":\"watching\",\"inboxes\":" + inboxes.append(']') + "}");
+        try {
+            while (!stop.await(options.progressMillis > 0 ? options.progressMillis : Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                printProgress(watcher.getBatch(), startNanos);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            watcher.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        synchronized (categoryCounts) {
+            outcome[1] += watcher.getConflictsSkipped();
+            printSummary(watcher.getBatch(), startNanos, "stopped", outcome, 0, categoryCounts);
+        }
+        dumpMetrics(options);
+        engine.shutdown();
+        finished.countDown();
+        return EXIT_INTERRUPTED;
+    }
+
+    private void dumpMetrics(SortOptions options) {
+        if (options.metricsFile == null) {
+            return;
+        }
+        try {
+            Metrics.dump(options.metricsFile);
+        } catch (IOException ex) {
+            printError(options.metricsFile, "Cannot write metrics: " + ex.getMessage());
+        }
+    }
+
+    //explicit rules file, else the app's rules file if one exists, else the built-in defaults
+    private static CategoryRules loadRules(Path rulesFile) throws IOException {
+        if (rulesFile == null) {
+            Path appRules = Paths.get(FileSortifyPaths.RULES_FILE);
+            if (!Files.isRegularFile(appRules)) {
+                return new CategoryRules(CategoryRules.defaultRules());
+            }
+            rulesFile = appRules;
+        }
+        return new CategoryRules(Files.readAllLines(rulesFile, StandardCharsets.UTF_8));
+    }
+
+    private void drain(ImportEngine.Batch batch, Map<String, Integer> categoryCounts, long[] outcome) {
+        batch.drainResults(result -> {
+            if (result.isSuccess()) {
+                outcome[0]++;
+                categoryCounts.merge(result.getTask().getCategory(), 1, Integer::sum);
+            } else if (result.isSkipped()) {
+                outcome[1]++;
+            } else if (!batch.isCancelled()) {
+                printError(result.getTask().getSource(), result.getError().getMessage());
+            }
+        });
+    }
+
+    private void printProgress(ImportEngine.Batch batch, long startNanos) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        out.println("{\"event\":\"progress\""
+                + ",\"filesDone\":" + batch.getFilesDone()
+                + ",\"filesTotal\":" + batch.getFilesTotal()
+                + ",\"filesFailed\":" + batch.getFilesFailed()
+                + ",\"bytesDone\":" + batch.getBytesDone()
+                + ",\"bytesTotal\":" + batch.getBytesTotal()
+                + ",\"elapsedSeconds\":" + number(seconds)
+                + ",\"filesPerSecond\":" + number(batch.getFilesDone() / seconds)
+                + ",\"mbPerSecond\":" + number(batch.getBytesPerSecond() / (1024 * 1024))
+                + "}");
+    }
+
+    private void printSummary(ImportEngine.Batch batch, long startNanos, String status, long[] outcome, long walkErrors,
+                              Map<String, Integer> categoryCounts) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        StringBuilder categories = new StringBuilder("{");
+        for (Map.Entry<String, Integer> entry : categoryCounts.entrySet()) {
+            if (categories.length() > 1) {
+                categories.append(',');
+            }
+            categories.append(json(entry.getKey())).append(':').append(entry.getValue());
+        }
+        categories.append('}');
+        out.println("{\"event\":\"summary\""
+                + ",\"status\":" + json(status)
+                + ",\"filesSeen\":" + (outcome[0] + outcome[1] + batch.getFilesFailed())
+                + ",\"imported\":" + outcome[0]
+                + ",\"skipped\":" + outcome[1]
+                + ",\"failed\":" + batch.getFilesFailed()
+                + ",\"unreadableEntries\":" + walkErrors
+                + ",\"bytes\":" + batch.getBytesDone()
+                + ",\"elapsedSeconds\":" + number(seconds)
+                + ",\"filesPerSecond\":" + number(batch.getFilesDone() / seconds)
+                + ",\"mbPerSecond\":" + number(batch.getBytesPerSecond() / (1024 * 1024))
+                + ",\"categories\":" + categories
+                + "}");
+        out.flush();
+    }
+
+    private void printError(Path source, String message) {
+        out.println("{\"event\":\"error\""
+                + (source != null ? ",\"source\":" + json(source.toString()) : "")
+                + ",\"message\":" + json(message != null ? message : "unknown error") + "}");
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static int intValue(String text, String option, int min) {
+        try {
+            int value = Integer.parseInt(text);
+            if (value < min) {
+                throw new IllegalArgumentException(option + " must be at least " + min);
+            }
+            return value;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(option + " needs a number, got " + text);
+        }
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String text, String option) {
+        try {
+            return Enum.valueOf(type, text.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(option + " does not accept " + text);
+        }
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    //JSON string literal
+    static String json(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
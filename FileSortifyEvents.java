@@ -0,0 +1,118 @@
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.nio.file.Path;
+
+/**
+ * JDK Flight Recorder events for file and persistence operations. Record them with
+ * java -XX:StartFlightRecording:filename=filesortify.jfr and open the file in JDK Mission Control;
+ * they are listed under FileSortify. Without a recording, begin/commit cost next to nothing and
+ * the call sites only fill in fields when {@link Event#shouldCommit()} says the event is wanted.
+ */
+public final class FileSortifyEvents {
+
+    private FileSortifyEvents() {
+    }
+
+    //ends a persistence event begun by the caller, filling it in only if a recording wants it
+    static void commit(Persistence event, String operation, Path path, long records, long bytes) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.path = path.toString();
+            event.records = records;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Name("filesortify.Classify")
+    @Label("Classify File")
+    @Category({"FileSortify", "Files"})
+    @Description("Picking the category of a file from its name, and its content if sniffed")
+    public static final class Classify extends Event {
+        @Label("File Name")
+        public String fileName;
+
+        @Label("Category")
+        public String category;
+
+        @Label("Content Sniffed")
+        public boolean sniffed;
+    }
+
+    @Name("filesortify.Transfer")
+    @Label("Transfer File")
+    @Category({"FileSortify", "Files"})
+    @Description("Moving, copying or linking a file into its category folder")
+    public static final class Transfer extends Event {
+        @Label("Source")
+        public String source;
+
+        @Label("Destination")
+        public String destination;
+
+        @Label("Category")
+        public String category;
+
+        @Label("Mode")
+        public String mode;
+
+        @Label("Strategy")
+        @Description("Transfer strategy that succeeded, empty if all failed")
+        public String strategy;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        public long bytes;
+    }
+
+    @Name("filesortify.Delete")
+    @Label("Delete Folder")
+    @Category({"FileSortify", "Files"})
+    public static final class Delete extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Files")
+        public long files;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        public long bytes;
+    }
+
+    @Name("filesortify.Persistence")
+    @Label("Persistence")
+    @Category({"FileSortify", "Persistence"})
+    @Description("Loading or saving the downloads journal, snapshots, the dedup index and settings")
+    public static final class Persistence extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Path")
+        public String path;
+
+        @Label("Records")
+        public long records;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        public long bytes;
+    }
+
+    @Name("filesortify.CategoryTree")
+    @Label("Category Tree Change")
+    @Category({"FileSortify", "User Interface"})
+    public static final class CategoryTree extends Event {
+        @Label("Action")
+        public String action;
+
+        @Label("Category")
+        public String category;
+    }
+}
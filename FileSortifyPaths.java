@@ -0,0 +1,29 @@
+
+import java.io.File;
+
+/**
+ * Locations of FileSortify's data below the user's home folder.
+ * Kept free of any UI class so the command-line sorter can use the same layout as the window.
+ */
+public final class FileSortifyPaths {
+
+    public static final String BASE_FOLDER = System.getProperty("user.home") + File.separator + "FileSortifyDemo";
+    //sorted files go to ALL_DOWNLOADS/<category>
+    public static final String ALL_DOWNLOADS = BASE_FOLDER + File.separator + "All Downloads";
+    public static final String CATEGORIES_FILE = BASE_FOLDER + File.separator + "custom_categories.txt";
+    public static final String RULES_FILE = BASE_FOLDER + File.separator + "category_rules.txt";
+    //legacy ObjectOutputStream file, migrated into the journal on first start
+    public static final String DOWNLOADS_FILE = BASE_FOLDER + File.separator + "downloads.dat";
+    public static final String CONTENT_INDEX_FILE = BASE_FOLDER + File.separator + "content_index.dat";
+    //what the download folder looked like at the last check, so a restart knows which files are new
+    public static final String DOWNLOAD_FOLDER_INDEX_FILE = BASE_FOLDER + File.separator + "download_folder_index.dat";
+    //download queues, speed limits and time windows
+    public static final String SCHEDULER_FILE = BASE_FOLDER + File.separator + "scheduler.properties";
+    //progress of stopped and interrupted URL downloads, one state file each
+    public static final String DOWNLOAD_STATE_FOLDER = BASE_FOLDER + File.separator + ".downloads";
+    //deleted folders and entries until they are purged, one manifest each
+    public static final String TRASH_FOLDER = BASE_FOLDER + File.separator + ".trash";
+
+    private FileSortifyPaths() {
+    }
+}
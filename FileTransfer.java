@@ -0,0 +1,371 @@
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Moves file data into the sorted folders using the cheapest strategy that works.
+ * Each {@link Mode} is an ordered chain of {@link Strategy}s; a strategy that fails for
+ * a pair of directories (e.g. cross-device) is remembered so the next files skip it.
+ */
+public final class FileTransfer {
+
+    //bytes copied per transferTo call, cancellation is checked between chunks
+    private static final long CHUNK_SIZE = 8L * 1024 * 1024;
+    //spawning a clone helper only pays off for files bigger than this
+    private static final long REFLINK_MIN_SIZE = 1024 * 1024;
+    private static final long REFLINK_TIMEOUT_SECONDS = 60;
+    private static final String CLONE_NOT_SUPPORTED = "Clone not supported";
+    //error texts of a missing capability: EXDEV, EOPNOTSUPP (which covers CLONE_NOT_SUPPORTED), EPERM on
+    //link-less filesystems and their Windows counterparts
+    private static final String[] UNSUPPORTED_REASONS = {"cross-device", "not supported", "not permitted",
+            "not same device", "different disk drive", "incorrect function"};
+    //file store types that can share extents between files
+    private static final Set<String> CLONE_FILE_STORES = Set.of("btrfs", "xfs", "apfs", "bcachefs", "zfs");
+
+    //how a single file gets to its destination
+    public enum Strategy {
+        MOVE("atomic move"),
+        HARD_LINK("hard link"),
+        REFLINK("copy-on-write clone"),
+        CHANNEL_COPY("channel copy");
+
+        private final String label;
+
+        Strategy(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    //what the user asked for, each mode lists its strategies from cheapest to most expensive
+    public enum Mode {
+        COPY("Copy (keep originals)", Strategy.REFLINK, Strategy.CHANNEL_COPY),
+        MOVE("Move", Strategy.MOVE, Strategy.CHANNEL_COPY),
+        LINK("Hard link", Strategy.HARD_LINK, Strategy.REFLINK, Strategy.CHANNEL_COPY);
+
+        private final String label;
+        private final List<Strategy> chain;
+
+        Mode(String label, Strategy... chain) {
+            this.label = label;
+            this.chain = List.of(chain);
+        }
+
+        public List<Strategy> getChain() {
+            return chain;
+        }
+
+        //true if the source is gone after a successful transfer
+        public boolean removesSource() {
+            return this == MOVE;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final String[] REFLINK_COMMAND = reflinkCommand();
+
+    //strategies known not to work between a source and a destination directory
+    private final Map<String, Set<Strategy>> unsupported = new ConcurrentHashMap<>();
+
+    /**
+     * Transfers source to destination, replacing an existing destination file.
+     * Progress is reported in bytes; strategies that do not copy data report the whole size at once.
+     * Returns the strategy that succeeded.
+     */
+    public Strategy transfer(Path source, Path destination, Mode mode, LongConsumer progress, BooleanSupplier cancelled) throws IOException {
+        return transfer(source, destination, mode, true, progress, cancelled);
+    }
+
+    /**
+     * Transfers source to destination. Unless replaceExisting is set, destination is created
+     * exclusively by every strategy and a {@link FileAlreadyExistsException} is thrown if a file
+     * has that name by then, e.g. one another program created after the destination was chosen.
+     */
+    public Strategy transfer(Path source, Path destination, Mode mode, boolean replaceExisting,
+                             LongConsumer progress, BooleanSupplier cancelled) throws IOException {
+        Files.createDirectories(destination.getParent());
+        String dirPair = source.toAbsolutePath().getParent() + "\u0000" + destination.toAbsolutePath().getParent();
+        Set<Strategy> skip = unsupported.getOrDefault(dirPair, Set.of());
+        long size = -1;
+        IOException lastFailure = null;
+        for (Strategy strategy : mode.getChain()) {
+            if (skip.contains(strategy)) {
+                continue;
+            }
+            if (cancelled.getAsBoolean()) {
+                throw new IOException("Transfer cancelled: " + source);
+            }
+            try {
+                switch (strategy) {
+                    case MOVE:
+                        size = Files.size(source);
+                        if (replaceExisting) {
+                            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                        } else {
+                            moveExclusively(source, destination);
+                        }
+                        progress.accept(size);
+                        return strategy;
+                    case HARD_LINK:
+                        size = Files.size(source);
+                        if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+                            progress.accept(size);
+                            return strategy;
+                        }
+                        if (replaceExisting) {
+                            Files.deleteIfExists(destination);
+                        }
+                        Files.createLink(destination, source);
+                        progress.accept(size);
+                        return strategy;
+                    case REFLINK:
+                        size = size >= 0 ? size : Files.size(source);
+                        if (REFLINK_COMMAND == null || size < REFLINK_MIN_SIZE) {
+                            continue;
+                        }
+                        boolean placeholder = false;
+                        boolean cloned = false;
+                        try {
+                            if (!replaceExisting) {
+                                //the clone is written over an empty file that holds the name
+                                Files.createFile(destination);
+                                placeholder = true;
+                            }
+                            reflink(source, destination);
+                            cloned = true;
+                        } finally {
+                            if (placeholder && !cloned) {
+                                //the next strategy creates the name itself
+                                Files.deleteIfExists(destination);
+                            }
+                        }
+                        progress.accept(size);
+                        return strategy;
+                    case CHANNEL_COPY:
+                        channelCopy(source, destination, replaceExisting, progress, cancelled);
+                        if (mode.removesSource()) {
+                            Files.delete(source);
+                        }
+                        return strategy;
+                    default:
+                        throw new IllegalStateException("Unknown strategy " + strategy);
+                }
+            } catch (NoSuchFileException | AccessDeniedException | FileAlreadyExistsException ex) {
+                //problems with this particular file, no other strategy will do better
+                throw ex;
+            } catch (IOException | UnsupportedOperationException ex) {
+                if (strategy == Strategy.CHANNEL_COPY) {
+                    throw ex;
+                }
+                //cross-device moves and links, filesystems without links or clones: skipped from now on;
+                //anything else (a locked file, a full disk) only makes this one file fall back
+                if (ex instanceof UnsupportedOperationException || isUnsupported((IOException) ex)) {
+                    markUnsupported(dirPair, strategy);
+                }
+                lastFailure = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+            }
+        }
+        throw lastFailure != null ? lastFailure : new IOException("No transfer strategy available for " + source);
+    }
+
+    /**
+     * The strategy {@link #transfer} is expected to end up with for a file of the given size,
+     * judged from the file stores alone so nothing is read or written. Moves and links only
+     * work within one store, clones only on stores that support them.
+     */
+    public static Strategy expectedStrategy(Mode mode, long size, FileStore source, FileStore destination) {
+        boolean sameStore = source != null && source.equals(destination);
+        for (Strategy strategy : mode.getChain()) {
+            switch (strategy) {
+                case MOVE:
+                case HARD_LINK:
+                    if (sameStore) {
+                        return strategy;
+                    }
+                    break;
+                case REFLINK:
+                    if (sameStore && REFLINK_COMMAND != null && size >= REFLINK_MIN_SIZE
+                            && CLONE_FILE_STORES.contains(destination.type().toLowerCase(Locale.ROOT))) {
+                        return strategy;
+                    }
+                    break;
+                default:
+                    return strategy;
+            }
+        }
+        return Strategy.CHANNEL_COPY;
+    }
+
+    //plain chunked copy, works across any two filesystems
+    public static void channelCopy(Path source, Path destination, LongConsumer progress, BooleanSupplier cancelled) throws IOException {
+        channelCopy(source, destination, true, progress, cancelled);
+    }
+
+    //plain chunked copy; unless replaceExisting is set, fails with FileAlreadyExistsException if destination exists
+    public static void channelCopy(Path source, Path destination, boolean replaceExisting,
+                                   LongConsumer progress, BooleanSupplier cancelled) throws IOException {
+        boolean opened = false;
+        boolean completed = false;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = replaceExisting
+                     ? FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+                     : FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            opened = true;
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                if (cancelled.getAsBoolean()) {
+                    throw new IOException("Transfer cancelled: " + source);
+                }
+                long transferred = in.transferTo(position, Math.min(CHUNK_SIZE, size - position), out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                progress.accept(transferred);
+            }
+            completed = true;
+        } finally {
+            if (opened && !completed) {
+                //never leave a truncated file behind in the category folder
+                Files.deleteIfExists(destination);
+            }
+        }
+    }
+
+    /**
+     * Moves source to destination unless a file has that name. A rename replaces the target on
+     * every platform, so the file is hard linked under the new name, which fails if the name is taken,
+     * and then unlinked. Where links are not available the name is checked right before the rename.
+     */
+    static void moveExclusively(Path source, Path destination) throws IOException {
+        try {
+            Files.createLink(destination, source);
+        } catch (FileAlreadyExistsException | NoSuchFileException | AccessDeniedException ex) {
+            throw ex;
+        } catch (IOException | UnsupportedOperationException ex) {
+            if (Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(destination.toString());
+            }
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        try {
+            Files.delete(source);
+        } catch (IOException ex) {
+            //the source stays where it was, so must the destination
+            Files.deleteIfExists(destination);
+            throw ex;
+        }
+    }
+
+    //true if the failure means the strategy cannot work between these two folders at all
+    private static boolean isUnsupported(IOException ex) {
+        if (ex instanceof AtomicMoveNotSupportedException) {
+            return true;
+        }
+        if (!(ex instanceof FileSystemException) || ((FileSystemException) ex).getReason() == null) {
+            return false;
+        }
+        String reason = ((FileSystemException) ex).getReason().toLowerCase(Locale.ROOT);
+        for (String known : UNSUPPORTED_REASONS) {
+            if (reason.contains(known)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markUnsupported(String dirPair, Strategy strategy) {
+        unsupported.computeIfAbsent(dirPair, k -> ConcurrentHashMap.newKeySet()).add(strategy);
+    }
+
+    /**
+     * Clones the file through the platform copy tool, there is no JDK API for reflinks.
+     * Fails fast when the filesystem cannot share extents, so the caller falls back to a real copy.
+     */
+    private static void reflink(Path source, Path destination) throws IOException {
+        String[] command = new String[REFLINK_COMMAND.length + 2];
+        System.arraycopy(REFLINK_COMMAND, 0, command, 0, REFLINK_COMMAND.length);
+        command[command.length - 2] = source.toString();
+        command[command.length - 1] = destination.toString();
+        //the output goes to a file, reading a pipe would block until cp exits and defeat the timeout
+        Path log = Files.createTempFile("filesortify-clone", ".log");
+        try {
+            Process process;
+            try {
+                process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+            } catch (IOException ex) {
+                //no copy tool to run, e.g. a minimal system without cp
+                throw new FileSystemException(source.toString(), destination.toString(), CLONE_NOT_SUPPORTED + ": " + ex.getMessage());
+            }
+            boolean cloned = false;
+            try {
+                process.getOutputStream().close();
+                if (!process.waitFor(REFLINK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    throw new FileSystemException(source.toString(), destination.toString(), "Clone timed out");
+                }
+                cloned = process.exitValue() == 0;
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("Clone interrupted: " + source, ex);
+            } finally {
+                if (!cloned) {
+                    //whatever cp wrote before it failed or was stopped
+                    Files.deleteIfExists(destination);
+                }
+            }
+            if (process.exitValue() != 0) {
+                String output = new String(Files.readAllBytes(log), StandardCharsets.UTF_8).trim();
+                //cp reports the errno text, e.g. "Operation not supported" or "Invalid cross-device link"
+                String lower = output.toLowerCase(Locale.ROOT);
+                boolean unsupported = lower.contains("not supported") || lower.contains("cross-device") || lower.contains("invalid argument");
+                throw new FileSystemException(source.toString(), destination.toString(),
+                        (unsupported ? CLONE_NOT_SUPPORTED : "Clone failed") + (output.isEmpty() ? "" : ": " + output));
+            }
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private static String[] reflinkCommand() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        if (os.contains("linux")) {
+            return new String[]{"cp", "--reflink=always"};
+        }
+        if (os.contains("mac")) {
+            return new String[]{"cp", "-c"};
+        }
+        return null;
+    }
+}
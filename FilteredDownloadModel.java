@@ -0,0 +1,241 @@
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The rows of the downloads table that pass the category, search and status filters, as the
+ * table sees them. Without a filter every model row is passed through unchanged. With one, the
+ * shown rows are kept as a sorted list of row ids, built from the id lists of the folder and
+ * search indexes, so the sorter above only ever handles the matching rows. Rows added or changed
+ * later are tested one by one against the filter instead of filtering the whole table again.
+ * Model rows are in row id order, so any range of model rows is one range of shown rows.
+ * Used on the EDT only.
+ */
+public final class FilteredDownloadModel extends AbstractTableModel implements TableModelListener {
+
+    private final DownloadTableModel model;
+    //ids of the shown rows ascending, null shows every row
+    private long[] ids;
+    private int size;
+    //decides for new or changed rows, by model row
+    private IntPredicate filter;
+
+    public FilteredDownloadModel(DownloadTableModel model) {
+        this.model = model;
+        model.addTableModelListener(this);
+    }
+
+    /**
+     * Shows only the rows with the given ids, ascending, and later rows that pass test.
+     * The ids must be exactly the rows passing test. A null filter shows every row.
+     */
+    public void setFilter(long[] matchingIds, IntPredicate test) {
+        if (test == null) {
+            ids = null;
+            size = 0;
+            filter = null;
+        } else {
+            ids = matchingIds.length > 0 ? matchingIds : new long[4];
+            size = matchingIds.length;
+            filter = test;
+        }
+        fireTableDataChanged();
+    }
+
+    public boolean isFiltered() {
+        return filter != null;
+    }
+
+    //row of the downloads model behind a row of this one
+    public int getModelRow(int row) {
+        if (ids == null) {
+            return row;
+        }
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        }
+        return model.rowForId(ids[row]);
+    }
+
+    @Override
+    public int getRowCount() {
+        return ids == null ? model.getRowCount() : size;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return model.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return model.getColumnName(column);
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return model.getColumnClass(column);
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return model.getValueAt(getModelRow(row), column);
+    }
+
+    // --- Following the model ---
+
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        if (ids == null) {
+            fireTableChanged(new TableModelEvent(this, e.getFirstRow(), e.getLastRow(), e.getColumn(), e.getType()));
+            return;
+        }
+        int first = e.getFirstRow();
+        int last = e.getLastRow();
+        if (first == TableModelEvent.HEADER_ROW) {
+            fireTableStructureChanged();
+            return;
+        }
+        if (last == Integer.MAX_VALUE) {
+            //e.g. all rows replaced, nothing to go by but the filter
+            refilter();
+            return;
+        }
+        switch (e.getType()) {
+            case TableModelEvent.INSERT:
+                rowsInserted(first, last);
+                break;
+            case TableModelEvent.DELETE:
+                rowsDeleted(first);
+                break;
+            case TableModelEvent.UPDATE:
+                if (e instanceof DownloadTableModel.TransientUpdateEvent) {
+                    //speed and time left only, no filter looks at them
+                    int from = lowerBound(model.getRowId(first));
+                    int to = lowerBound(model.getRowId(last) + 1);
+                    if (from < to) {
+                        fireTableRowsUpdated(from, to - 1);
+                    }
+                } else {
+                    rowsUpdated(first, last, e.getColumn());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void rowsInserted(int first, int last) {
+        int at = lowerBound(model.getRowId(first));
+        int added = 0;
+        long[] passing = null;
+        for (int row = first; row <= last; row++) {
+            if (filter.test(row)) {
+                if (passing == null) {
+                    passing = new long[last - row + 1];
+                }
+                passing[added++] = model.getRowId(row);
+            }
+        }
+        if (added > 0) {
+            replace(at, at, passing, added);
+            fireTableRowsInserted(at, at + added - 1);
+        }
+    }
+
+    //the rows are already gone: the shown ones among them lie between the ids of their neighbours
+    private void rowsDeleted(int first) {
+        int from = first > 0 ? lowerBound(model.getRowId(first - 1) + 1) : 0;
+        int to = first < model.getRowCount() ? lowerBound(model.getRowId(first)) : size;
+        if (from < to) {
+            replace(from, to, null, 0);
+            fireTableRowsDeleted(from, to - 1);
+        }
+    }
+
+    private void rowsUpdated(int first, int last, int column) {
+        int from = lowerBound(model.getRowId(first));
+        int to = lowerBound(model.getRowId(last) + 1);
+        long[] passing = new long[last - first + 1];
+        int count = 0;
+        for (int row = first; row <= last; row++) {
+            if (filter.test(row)) {
+                passing[count++] = model.getRowId(row);
+            }
+        }
+        boolean same = count == to - from;
+        for (int i = 0; same && i < count; i++) {
+            same = passing[i] == ids[from + i];
+        }
+        if (same) {
+            if (count > 0) {
+                fireTableChanged(new TableModelEvent(this, from, to - 1, column, TableModelEvent.UPDATE));
+            }
+            return;
+        }
+        //rows entered or left the filter
+        if (from < to) {
+            replace(from, to, null, 0);
+            fireTableRowsDeleted(from, to - 1);
+        }
+        if (count > 0) {
+            replace(from, from, passing, count);
+            fireTableRowsInserted(from, from + count - 1);
+        }
+    }
+
+    private void refilter() {
+        RowIds result = new RowIds();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            if (filter.test(row)) {
+                result.add(model.getRowId(row));
+            }
+        }
+        ids = result.size > 0 ? result.ids : new long[4];
+        size = result.size;
+        fireTableDataChanged();
+    }
+
+    //replaces the shown ids in [from, to) with the first count of added
+    private void replace(int from, int to, long[] added, int count) {
+        int newSize = size - (to - from) + count;
+        if (newSize > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(newSize, ids.length + (ids.length >> 1)));
+        }
+        System.arraycopy(ids, to, ids, from + count, size - to);
+        if (count > 0) {
+            System.arraycopy(added, 0, ids, from, count);
+        }
+        size = newSize;
+    }
+
+    //index of the first shown id at least rowId
+    private int lowerBound(long rowId) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < rowId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class RowIds {
+        long[] ids = new long[16];
+        int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * File count and total size of folder trees, for the badges of the category tree.
+ * Folders are scanned on one low-priority background thread; {@link #get} never touches the disk.
+ * Every directory's own files are cached together with the directory's modification time, so
+ * checking a tree again costs one stat per directory, and only directories whose entries changed
+ * are listed again. A file rewritten in place does not change its directory's time, its new size
+ * is picked up the next time something in that directory is added, removed or renamed.
+ */
+public final class FolderStatsCache {
+
+    private static final Metrics.Histogram SCAN_LATENCY = Metrics.histogram("folder.stats");
+
+    //files and bytes of a whole folder tree
+    public static final class Totals {
+        private final long files;
+        private final long bytes;
+
+        Totals(long files, long bytes) {
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Totals && ((Totals) other).files == files && ((Totals) other).bytes == bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(files) * 31 + Long.hashCode(bytes);
+        }
+
+        //e.g. "1,204 files, 3.2 GB"
+        @Override
+        public String toString() {
+            return String.format("%,d %s, %s", files, files == 1 ? "file" : "files", formatBytes(bytes));
+        }
+    }
+
+    //one directory as last listed
+    private static final class Entry {
+        final long modified;
+        final long files;
+        final long bytes;
+        final List<Path> subdirectories;
+        final Totals totals;
+        //expiry generation the entry was checked in
+        final long checked;
+
+        Entry(long modified, long files, long bytes, List<Path> subdirectories, Totals totals, long checked) {
+            this.modified = modified;
+            this.files = files;
+            this.bytes = bytes;
+            this.subdirectories = subdirectories;
+            this.totals = totals;
+            this.checked = checked;
+        }
+    }
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    //folders waiting for the scanner, so a folder painted many times is queued once
+    private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+    private final ExecutorService scanner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "folder-stats");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private final Runnable changeListener;
+    private volatile long generation;
+
+    //changeListener runs on the scanner thread whenever some folder's totals changed
+    public FolderStatsCache(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * The last known totals of folder, null if it was never scanned.
+     * Queues a scan if there is nothing yet or the cache expired since the folder was checked.
+     */
+    public Totals get(Path folder) {
+        Entry entry = entries.get(folder);
+        if ((entry == null || entry.checked != generation) && queued.add(folder)) {
+            scanner.execute(() -> scan(folder));
+        }
+        return entry != null ? entry.totals : null;
+    }
+
+    //folders are checked again the next time they are asked for, e.g. after an import
+    public void expire() {
+        generation++;
+    }
+
+    public void shutdown() {
+        scanner.shutdownNow();
+    }
+
+    private void scan(Path folder) {
+        queued.remove(folder);
+        long start = Metrics.start();
+        boolean[] changed = new boolean[1];
+        check(folder, generation, changed);
+        SCAN_LATENCY.recordSince(start);
+        if (changed[0]) {
+            changeListener.run();
+        }
+    }
+
+    //brings the entry of directory and everything below it up to date, returns its totals
+    private Totals check(Path directory, long checkGeneration, boolean[] changed) {
+        Entry entry = entries.get(directory);
+        if (entry != null && entry.checked == checkGeneration) {
+            return entry.totals;
+        }
+        long modified;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isDirectory()) {
+                return forget(directory, changed);
+            }
+            modified = attributes.lastModifiedTime().toMillis();
+        } catch (IOException ex) {
+            return forget(directory, changed);
+        }
+        long files;
+        long bytes;
+        List<Path> subdirectories;
+        if (entry != null && entry.modified == modified) {
+            files = entry.files;
+            bytes = entry.bytes;
+            subdirectories = entry.subdirectories;
+        } else {
+            files = 0;
+            bytes = 0;
+            subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException ex) {
+                        continue;
+                    }
+                    //links are counted as files and never followed
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(child);
+                    } else {
+                        files++;
+                        bytes += attributes.isRegularFile() ? attributes.size() : 0;
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException ex) {
+                //unreadable: counted with what was listed so far
+            }
+            //directories removed meanwhile drop out of the cache
+            if (entry != null) {
+                Set<Path> listed = new HashSet<>(subdirectories);
+                for (Path old : entry.subdirectories) {
+                    if (!listed.contains(old)) {
+                        forgetTree(old);
+                    }
+                }
+            }
+        }
+        long totalFiles = files;
+        long totalBytes = bytes;
+        for (Path subdirectory : subdirectories) {
+            Totals below = check(subdirectory, checkGeneration, changed);
+            totalFiles += below.files;
+            totalBytes += below.bytes;
+        }
+        Totals totals = new Totals(totalFiles, totalBytes);
+        if (entry == null || !entry.totals.equals(totals)) {
+            changed[0] = true;
+        }
+        entries.put(directory, new Entry(modified, files, bytes, subdirectories, totals, checkGeneration));
+        return totals;
+    }
+
+    private Totals forget(Path directory, boolean[] changed) {
+        if (entries.containsKey(directory)) {
+            forgetTree(directory);
+            changed[0] = true;
+        }
+        return new Totals(0, 0);
+    }
+
+    private void forgetTree(Path directory) {
+        Entry entry = entries.remove(directory);
+        if (entry != null) {
+            for (Path subdirectory : entry.subdirectories) {
+                forgetTree(subdirectory);
+            }
+        }
+    }
+
+    //e.g. "512 B", "14.2 KB", "3.2 GB"
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KB", "MB", "GB", "TB", "PB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+}
@@ -0,0 +1,52 @@
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.File;
+
+/**
+ * A category tree node backed by a folder on disk whose subfolders are listed the first time
+ * the node is expanded. Until then it shows an expand handle; once listed it is a leaf only if
+ * the folder has no subfolders. The user object stays the folder name, like for every other
+ * node, so paths are still built from the node names.
+ */
+public class FolderTreeNode extends DefaultMutableTreeNode {
+
+    private boolean childrenLoaded;
+    private boolean loading;
+
+    public FolderTreeNode(String name) {
+        super(name);
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return childrenLoaded && getChildCount() == 0;
+    }
+
+    public boolean isChildrenLoaded() {
+        return childrenLoaded;
+    }
+
+    public void setChildrenLoaded(boolean childrenLoaded) {
+        this.childrenLoaded = childrenLoaded;
+    }
+
+    //true while a listing for this node is running
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
+    //the folder below baseFolder that this node stands for, built from the names on its path
+    public File getFolder(String baseFolder) {
+        File folder = new File(baseFolder);
+        Object[] path = getUserObjectPath();
+        //the first entry is the hidden root
+        for (int i = 1; i < path.length; i++) {
+            folder = new File(folder, path[i].toString());
+        }
+        return folder;
+    }
+}
@@ -0,0 +1,296 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Sorts files as they land in inbox folders.
+ * A watcher thread only records which paths changed, so event storms collapse into one pending
+ * entry per file. A settle thread re-stats pending files a few times per quiet period and hands
+ * a file to the import batch once its size and modification time stopped changing. When the
+ * OS drops events (OVERFLOW) only the directory whose key overflowed is listed again.
+ * Uses no AWT or Swing, results go to a listener on the settle thread.
+ */
+public final class FolderWatcher implements Closeable {
+
+    //names browsers and download tools use while a file is still being written
+    private static final List<String> PARTIAL_SUFFIXES = List.of(".part", ".partial", ".crdownload", ".download", ".tmp", ".!qb");
+
+    private final FileSorter.Session session;
+    private final ImportEngine.Batch batch;
+    private final DirectoryWalker.Options walkOptions;
+    private final long quietNanos;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Set<Path> watchedPaths = ConcurrentHashMap.newKeySet();
+    private final Path destinationRoot;
+    //files waiting for their size and mtime to settle
+    private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService settler;
+    private final Thread watcherThread;
+    private volatile Consumer<ImportEngine.ImportResult> listener = result -> { };
+    private volatile boolean closed;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder filesSubmitted = new LongAdder();
+
+    /**
+     * Creates a watcher feeding a new batch of engine. Files are sorted with sortOptions;
+     * its walk options filter hidden files and decide whether links are followed.
+     * quietMillis is how long a file must stay unchanged before it is sorted.
+     */
+    public FolderWatcher(FileSorter sorter, ImportEngine engine, FileTransfer.Mode mode, FileSorter.Options sortOptions, long quietMillis) throws IOException {
+        this.batch = engine.newBatch(mode);
+        this.session = sorter.open(batch, sortOptions);
+        this.destinationRoot = sorter.getDestinationRoot().toAbsolutePath().normalize();
+        this.walkOptions = sortOptions.getWalkOptions();
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, quietMillis));
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.settler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "folder-watcher-settle");
+            t.setDaemon(true);
+            return t;
+        });
+        this.watcherThread = new Thread(this::watchLoop, "folder-watcher");
+        this.watcherThread.setDaemon(true);
+    }
+
+    //receives every finished import on the settle thread
+    public void setListener(Consumer<ImportEngine.ImportResult> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Watches dir and every folder below it. Files already inside are sorted too,
+     * once they are seen to be stable.
+     */
+    public void addInbox(Path dir) throws IOException {
+        registerTree(dir.toAbsolutePath().normalize());
+    }
+
+    public void start() {
+        long tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(5), quietNanos / 4);
+        settler.scheduleWithFixedDelay(this::settle, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        watcherThread.start();
+    }
+
+    public ImportEngine.Batch getBatch() {
+        return batch;
+    }
+
+    public long getEvents() {
+        return events.sum();
+    }
+
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    public long getFilesSubmitted() {
+        return filesSubmitted.sum();
+    }
+
+    //files left alone because their destination exists, read after close() for an exact count
+    public long getConflictsSkipped() {
+        return session.getStats().getConflictsSkipped();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    //stops watching, files already handed to the batch are finished first
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        settler.shutdown();
+        try {
+            settler.awaitTermination(10, TimeUnit.SECONDS);
+            batch.close();
+            batch.await();
+        } catch (InterruptedException ex) {
+            batch.cancel();
+            Thread.currentThread().interrupt();
+        }
+        batch.drainResults(this::deliver);
+    }
+
+    private void watchLoop() {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.take();
+                Path dir = watchedDirectories.get(key);
+                if (dir != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        events.increment();
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            //events were lost, but only for this directory
+                            overflows.increment();
+                            rescan(dir);
+                        } else {
+                            changed(dir.resolve((Path) event.context()));
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    //the directory is gone
+                    Path removed = watchedDirectories.remove(key);
+                    if (removed != null) {
+                        watchedPaths.remove(removed);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            //closing
+        }
+    }
+
+    //called for every create or modify event, must stay cheap
+    private void changed(Path path) {
+        pending.computeIfAbsent(path, p -> new Pending());
+    }
+
+    private void registerTree(Path dir) throws IOException {
+        if (isDestination(dir) || !watchedPaths.add(dir)) {
+            return;
+        }
+        WatchKey key;
+        try {
+            key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ex) {
+            watchedPaths.remove(dir);
+            throw ex;
+        }
+        watchedDirectories.put(key, dir);
+        //files created before the registration took effect never produce an event
+        rescan(dir);
+    }
+
+    //lists one directory again, registering subdirectories that are not watched yet
+    private void rescan(Path dir) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry, linkOptions())) {
+                    if (!watchedPaths.contains(entry) && !skipped(entry)) {
+                        registerTree(entry);
+                    }
+                } else {
+                    changed(entry);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            //removed meanwhile
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    //runs on the settle thread: sorts files that stopped changing, then hands out results
+    private void settle() {
+        try {
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && !closed) {
+                Map.Entry<Path, Pending> entry = iterator.next();
+                Path path = entry.getKey();
+                Pending state = entry.getValue();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class, linkOptions());
+                } catch (IOException ex) {
+                    //gone (e.g. renamed by the program writing it), a new event brings it back
+                    iterator.remove();
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    //a watched folder only reports that its contents changed, its own key covers that
+                    iterator.remove();
+                    if (!watchedPaths.contains(path) && !skipped(path)) {
+                        registerTree(path);
+                    }
+                    continue;
+                }
+                if (!attributes.isRegularFile() || skipped(path)) {
+                    iterator.remove();
+                    continue;
+                }
+                long size = attributes.size();
+                long modified = attributes.lastModifiedTime().toMillis();
+                if (size != state.size || modified != state.lastModified) {
+                    state.size = size;
+                    state.lastModified = modified;
+                    state.stableSinceNanos = now;
+                } else if (now - state.stableSinceNanos >= quietNanos) {
+                    iterator.remove();
+                    if (!session.submit(path, attributes)) {
+                        return;
+                    }
+                    filesSubmitted.increment();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException ex) {
+            //keep the scheduled task alive
+            ex.printStackTrace();
+        }
+        batch.drainResults(this::deliver);
+    }
+
+    private void deliver(ImportEngine.ImportResult result) {
+        if (result.getTask().getDestination() != null) {
+            session.release(result.getTask().getDestination(), result.isSuccess());
+        }
+        listener.accept(result);
+    }
+
+    //partial downloads, hidden files (unless wanted) and our own destination folders are left alone
+    private boolean skipped(Path path) throws IOException {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String suffix : PARTIAL_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return (!walkOptions.isIncludeHidden() && DirectoryWalker.isHidden(path)) || isDestination(path);
+    }
+
+    private boolean isDestination(Path path) {
+        return path.startsWith(destinationRoot);
+    }
+
+    private LinkOption[] linkOptions() {
+        return walkOptions.isFollowLinks() ? new LinkOption[0] : new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+    }
+
+    //last seen state of a file that is not sorted yet, only touched by the settle thread
+    private static final class Pending {
+        long size = -1;
+        long lastModified = -1;
+        long stableSinceNanos;
+    }
+}
@@ -0,0 +1,442 @@
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Background import engine for FileSortify.
+ * Transfers files concurrently on a bounded worker pool using {@link FileTransfer},
+ * keeps aggregate progress counters and supports cancellation. It never touches Swing:
+ * callers poll a {@link Batch} (e.g. from a javax.swing.Timer) and drain finished files in bulk.
+ */
+public class ImportEngine {
+
+    private static final Metrics.Counter TRANSFER_BYTES = Metrics.counter("transfer.bytes");
+    private static final Metrics.Counter TRANSFER_FAILURES = Metrics.counter("transfer.failures");
+    //one latency histogram per strategy, indexed by ordinal
+    private static final Metrics.Histogram[] TRANSFER_LATENCY = new Metrics.Histogram[FileTransfer.Strategy.values().length];
+
+    static {
+        for (FileTransfer.Strategy strategy : FileTransfer.Strategy.values()) {
+            TRANSFER_LATENCY[strategy.ordinal()] = Metrics.histogram("transfer." + strategy.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private final ExecutorService workers;
+    private final FileTransfer transfer = new FileTransfer();
+    private final int parallelism;
+
+    public ImportEngine(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "import-worker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(this.parallelism, this.parallelism,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        this.workers = pool;
+    }
+
+    //default engine sized for disk-bound work: a few workers regardless of core count
+    public ImportEngine() {
+        this(Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    //starts a new batch, at most twice the worker count of files are queued at any time
+    public Batch newBatch(FileTransfer.Mode mode) {
+        return new Batch(mode, parallelism * 2);
+    }
+
+    public Batch newBatch() {
+        return newBatch(FileTransfer.Mode.COPY);
+    }
+
+    //stops accepting work, running copies are left to finish or be cancelled by their batch
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Completes tasks that were submitted without a destination, e.g. because classifying them
+     * needs I/O. Runs on the worker threads; returning null skips the file.
+     */
+    public interface TaskResolver {
+        ImportTask resolve(ImportTask task) throws IOException;
+    }
+
+    //a single file to import
+    public static final class ImportTask {
+        private final Path source;
+        private final Path destination;
+        private final String category;
+        private final long size;
+
+        public ImportTask(Path source, Path destination, String category, long size) {
+            this.source = source;
+            this.destination = destination;
+            this.category = category;
+            this.size = size;
+        }
+
+        //a task whose category and destination are decided later by the batch's resolver
+        public static ImportTask unresolved(Path source, long size) {
+            return new ImportTask(source, null, null, size);
+        }
+
+        public ImportTask resolvedTo(Path destination, String category) {
+            return new ImportTask(source, destination, category, size);
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getDestination() {
+            return destination;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    //outcome of one task, drained by the caller after the copy finished
+    public static final class ImportResult {
+        private final ImportTask task;
+        private final FileTransfer.Strategy strategy;
+        private final IOException error;
+        private final Path duplicateOf;
+
+        ImportResult(ImportTask task, FileTransfer.Strategy strategy, IOException error) {
+            this(task, strategy, error, null);
+        }
+
+        ImportResult(ImportTask task, FileTransfer.Strategy strategy, IOException error, Path duplicateOf) {
+            this.task = task;
+            this.strategy = strategy;
+            this.error = error;
+            this.duplicateOf = duplicateOf;
+        }
+
+        public ImportTask getTask() {
+            return task;
+        }
+
+        //how the file got there, null if the import failed
+        public FileTransfer.Strategy getStrategy() {
+            return strategy;
+        }
+
+        public IOException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null && strategy != null;
+        }
+
+        //the resolver decided not to import this file, it was a skipped duplicate or its destination was taken
+        public boolean isSkipped() {
+            return error == null && strategy == null;
+        }
+
+        //existing file with the same content, if the import was recognised as a duplicate
+        public Path getDuplicateOf() {
+            return duplicateOf;
+        }
+    }
+
+    /**
+     * A group of imports submitted together.
+     * Counters are updated lock-free by the workers and can be read from any thread.
+     */
+    public final class Batch {
+        private final FileTransfer.Mode mode;
+        private final Semaphore inFlight;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicLong bytesTotal = new AtomicLong();
+        private final AtomicLong bytesDone = new AtomicLong();
+        private final AtomicInteger filesTotal = new AtomicInteger();
+        private final AtomicInteger filesDone = new AtomicInteger();
+        private final AtomicInteger filesFailed = new AtomicInteger();
+        private final Queue<ImportResult> results = new ConcurrentLinkedQueue<>();
+        private volatile TaskResolver resolver;
+        private volatile TaskResolver conflictResolver;
+        private volatile DedupIndex dedupIndex;
+        private volatile DedupIndex.Action dedupAction = DedupIndex.Action.IMPORT;
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        private Batch(FileTransfer.Mode mode, int maxInFlight) {
+            this.mode = mode;
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+
+        /**
+         * Queues a file for import. Blocks while the worker pool is saturated so that
+         * producers walking huge inputs never run ahead of the disks.
+         * Returns false if the batch was cancelled.
+         */
+        public boolean submit(ImportTask task) throws InterruptedException {
+            if (closed.get()) {
+                throw new IllegalStateException("Batch already closed");
+            }
+            if (cancelled.get()) {
+                return false;
+            }
+            inFlight.acquire();
+            if (cancelled.get()) {
+                inFlight.release();
+                return false;
+            }
+            pending.incrementAndGet();
+            filesTotal.incrementAndGet();
+            bytesTotal.addAndGet(task.getSize());
+            workers.execute(() -> {
+                try {
+                    results.add(runTask(task));
+                } finally {
+                    inFlight.release();
+                    taskFinished();
+                }
+            });
+            return true;
+        }
+
+        //marks the end of submissions, the batch completes once queued files are done
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                taskFinished();
+            }
+        }
+
+        //requests cancellation: queued files are skipped and running copies stop at the next chunk
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        //must be set before submitting unresolved tasks
+        public void setResolver(TaskResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        /**
+         * Makes the batch never replace an existing file: destinations are created exclusively, and a task
+         * whose destination was taken after it was resolved, e.g. by another program, is handed to
+         * resolver again, which returns it with a new destination or null to skip the file.
+         * Must be set before submitting.
+         */
+        public void setExclusive(TaskResolver resolver) {
+            this.conflictResolver = resolver;
+        }
+
+        //checks every file against the index before transferring it, must be set before submitting
+        public void setDeduplication(DedupIndex index, DedupIndex.Action action) {
+            this.dedupIndex = index;
+            this.dedupAction = action;
+        }
+
+        public FileTransfer.Mode getMode() {
+            return mode;
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public void await() throws InterruptedException {
+            done.await();
+        }
+
+        public long getBytesTotal() {
+            return bytesTotal.get();
+        }
+
+        public long getBytesDone() {
+            return bytesDone.get();
+        }
+
+        public int getFilesTotal() {
+            return filesTotal.get();
+        }
+
+        public int getFilesDone() {
+            return filesDone.get();
+        }
+
+        public int getFilesFailed() {
+            return filesFailed.get();
+        }
+
+        //aggregate throughput since the batch started
+        public double getBytesPerSecond() {
+            long end = isDone() ? endNanos : System.nanoTime();
+            double seconds = (end - startNanos) / 1_000_000_000.0;
+            return seconds > 0 ? bytesDone.get() / seconds : 0;
+        }
+
+        //hands all results finished since the last call to the consumer
+        public void drainResults(Consumer<ImportResult> consumer) {
+            ImportResult result;
+            while ((result = results.poll()) != null) {
+                consumer.accept(result);
+            }
+        }
+
+        //convenience for callers that only care about the final outcome
+        public List<ImportResult> drainResults() {
+            List<ImportResult> drained = new ArrayList<>();
+            drainResults(drained::add);
+            return drained;
+        }
+
+        private ImportResult runTask(ImportTask task) {
+            if (cancelled.get()) {
+                return new ImportResult(task, null, new IOException("Import cancelled: " + task.getSource()));
+            }
+            try {
+                if (task.getDestination() == null) {
+                    ImportTask resolved = resolver != null ? resolver.resolve(task) : null;
+                    if (resolved == null) {
+                        bytesDone.addAndGet(task.getSize());
+                        filesDone.incrementAndGet();
+                        return new ImportResult(task, null, null);
+                    }
+                    task = resolved;
+                }
+                TaskResolver onConflict = conflictResolver;
+                while (true) {
+                    try {
+                        return importTask(task, onConflict == null);
+                    } catch (FileAlreadyExistsException ex) {
+                        if (onConflict == null) {
+                            throw ex;
+                        }
+                        ImportTask resolved = onConflict.resolve(task);
+                        if (resolved == null) {
+                            bytesDone.addAndGet(task.getSize());
+                            filesDone.incrementAndGet();
+                            return new ImportResult(task, null, null);
+                        }
+                        task = resolved;
+                    }
+                }
+            } catch (IOException ex) {
+                filesFailed.incrementAndGet();
+                return new ImportResult(task, null, ex);
+            }
+        }
+
+        //deduplicates and transfers a resolved task; a taken destination leaves the progress counters as they were
+        private ImportResult importTask(ImportTask task, boolean replaceExisting) throws IOException {
+            DedupIndex index = dedupAction != DedupIndex.Action.IMPORT ? dedupIndex : null;
+            if (index != null) {
+                Path existing = index.findOrRegister(task.getSource(), task.getDestination(), task.getSize());
+                if (existing != null) {
+                    return importDuplicate(task, existing, replaceExisting);
+                }
+            }
+            FileSortifyEvents.Transfer event = new FileSortifyEvents.Transfer();
+            event.begin();
+            long start = Metrics.start();
+            FileTransfer.Strategy strategy = null;
+            AtomicLong transferred = new AtomicLong();
+            try {
+                strategy = transfer.transfer(task.getSource(), task.getDestination(), mode, replaceExisting, bytes -> {
+                    transferred.addAndGet(bytes);
+                    bytesDone.addAndGet(bytes);
+                }, cancelled::get);
+                if (index != null) {
+                    index.completed(task.getDestination(), task.getSize());
+                }
+                filesDone.incrementAndGet();
+                return new ImportResult(task, strategy, null);
+            } catch (IOException ex) {
+                if (index != null) {
+                    index.remove(task.getDestination(), task.getSize());
+                }
+                if (ex instanceof FileAlreadyExistsException) {
+                    //nothing landed, the file is resolved again
+                    bytesDone.addAndGet(-transferred.get());
+                } else {
+                    TRANSFER_FAILURES.increment();
+                }
+                throw ex;
+            } finally {
+                if (strategy != null && start != 0) {
+                    TRANSFER_LATENCY[strategy.ordinal()].recordSince(start);
+                    TRANSFER_BYTES.add(task.getSize());
+                }
+                if (event.shouldCommit()) {
+                    event.source = task.getSource().toString();
+                    event.destination = task.getDestination().toString();
+                    event.category = task.getCategory();
+                    event.mode = mode.name();
+                    event.strategy = strategy != null ? strategy.name() : "";
+                    event.bytes = task.getSize();
+                    event.commit();
+                }
+            }
+        }
+
+        //the content is already in the category folders: skip it or link to the existing copy
+        private ImportResult importDuplicate(ImportTask task, Path existing, boolean replaceExisting) throws IOException {
+            if (dedupAction == DedupIndex.Action.LINK) {
+                Files.createDirectories(task.getDestination().getParent());
+                if (replaceExisting) {
+                    Files.deleteIfExists(task.getDestination());
+                }
+                Files.createLink(task.getDestination(), existing);
+                if (mode.removesSource()) {
+                    Files.delete(task.getSource());
+                }
+            }
+            bytesDone.addAndGet(task.getSize());
+            filesDone.incrementAndGet();
+            FileTransfer.Strategy strategy = dedupAction == DedupIndex.Action.LINK ? FileTransfer.Strategy.HARD_LINK : null;
+            return new ImportResult(task, strategy, null, existing);
+        }
+
+        private void taskFinished() {
+            if (pending.decrementAndGet() == 0) {
+                endNanos = System.nanoTime();
+                done.countDown();
+            }
+        }
+    }
+}
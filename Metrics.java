@@ -0,0 +1,220 @@
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process counters and latency histograms for I/O and persistence operations, shown in the
+ * diagnostics window and dumped with --metrics by the command-line sorter.
+ * Recording is one LongAdder or array increment; while disabled {@link #start()} returns 0 and
+ * every record call returns after a single volatile read. Enabled unless the system property
+ * filesortify.metrics is false.
+ */
+public final class Metrics {
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("filesortify.metrics"));
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    //lookups by name happen on every record, skip-list order only matters for reports
+    private static final Map<String, Counter> COUNTER_CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAM_CACHE = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static Counter counter(String name) {
+        return COUNTER_CACHE.computeIfAbsent(name, key -> {
+            Counter counter = new Counter();
+            COUNTERS.put(key, counter);
+            return counter;
+        });
+    }
+
+    //latencies in nanoseconds
+    public static Histogram histogram(String name) {
+        return HISTOGRAM_CACHE.computeIfAbsent(name, key -> {
+            Histogram histogram = new Histogram();
+            HISTOGRAMS.put(key, histogram);
+            return histogram;
+        });
+    }
+
+    //start time for Histogram.recordSince, 0 while disabled
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    //zeroes every counter and histogram, the names stay registered
+    public static void reset() {
+        for (Counter counter : COUNTERS.values()) {
+            counter.value.reset();
+        }
+        for (Histogram histogram : HISTOGRAMS.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Plain-text table of all counters, then count, mean, percentiles and max of all histograms.
+     */
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-34s %14s%n", "Counter", "Value"));
+        for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+            out.append(String.format("%-34s %14d%n", entry.getKey(), entry.getValue().get()));
+        }
+        out.append(String.format("%n%-34s %10s %10s %10s %10s %10s %10s%n", "Latency (ms)", "Count", "Mean", "p50", "p90", "p99", "Max"));
+        for (Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            out.append(String.format("%-34s %10d %10s %10s %10s %10s %10s%n", entry.getKey(), count,
+                    millis(count > 0 ? histogram.getTotalNanos() / count : 0), millis(histogram.percentile(50)),
+                    millis(histogram.percentile(90)), millis(histogram.percentile(99)), millis(histogram.getMaxNanos())));
+        }
+        return out.toString();
+    }
+
+    public static void dump(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(report());
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    /**
+     * Monotonic count of events or bytes.
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            if (enabled) {
+                value.increment();
+            }
+        }
+
+        public void add(long amount) {
+            if (enabled) {
+                value.add(amount);
+            }
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Log-linear latency histogram in the style of HdrHistogram: every power of two is split
+     * into 16 linear buckets, so any value is kept to within about 6% with a fixed 8 KB of
+     * counters and no locking.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private volatile long maxNanos;
+
+        //records the time since a Metrics.start() value; does nothing if that was taken while disabled
+        public void recordSince(long startNanos) {
+            if (startNanos != 0 && enabled) {
+                record(System.nanoTime() - startNanos);
+            }
+        }
+
+        public void record(long nanos) {
+            if (!enabled) {
+                return;
+            }
+            long value = Math.max(0, nanos);
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            totalNanos.add(value);
+            //racy max is fine, a lost update is corrected by the next larger value
+            if (value > maxNanos) {
+                maxNanos = value;
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        //value at the given percentile (0-100), as the middle of its bucket
+        public long percentile(double percentile) {
+            long total = 0;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(maxNanos, (lowestOf(i) + lowestOf(i + 1)) / 2);
+                }
+            }
+            return maxNanos;
+        }
+
+        private void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos = 0;
+        }
+
+        //values below 16 get a bucket each, above that the 4 bits after the highest one pick the bucket
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+        }
+
+        private static long lowestOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            return (SUB_BUCKETS + (long) (bucket % SUB_BUCKETS)) << shift;
+        }
+    }
+}
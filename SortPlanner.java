@@ -0,0 +1,520 @@
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Works out what sorting a set of sources would do before a single byte is moved.
+ * Sources are walked and their files classified on a small pool, every destination conflict is
+ * resolved with the chosen policy and each file gets the transfer strategy its file stores allow.
+ * The resulting {@link Plan} has per-category totals, conflicts, unreadable files and the usable
+ * space of every destination store; executing it submits its prepared tasks to an import batch
+ * without looking at the files again.
+ */
+public final class SortPlanner {
+
+    private static final Metrics.Histogram PLAN_LATENCY = Metrics.histogram("plan");
+    //files classified per pool task, small enough to spread one big folder over all threads
+    private static final int CHUNK_FILES = 256;
+    //problems listed by describe(), the export has all of them
+    private static final int LISTED_PROBLEMS = 20;
+
+    private final FileSorter sorter;
+    private final int parallelism;
+
+    public SortPlanner(FileSorter sorter, int parallelism) {
+        this.sorter = sorter;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    //what the plan does with one file
+    public enum Outcome {
+        NEW("new"),
+        RENAMED("renamed"),
+        REPLACED("replaces existing"),
+        SKIPPED("skipped, exists"),
+        UNREADABLE("cannot be read");
+
+        private final String label;
+
+        Outcome(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    //one source file and where it goes
+    public static final class Entry {
+        private final Path source;
+        private final long size;
+        private final long lastModified;
+        private String category;
+        private Path destination;
+        private Outcome outcome;
+        private FileTransfer.Strategy strategy;
+        private FileStore sourceStore;
+        private String problem;
+
+        Entry(Path source, long size, long lastModified) {
+            this.source = source;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        //null if the file cannot be read
+        public String getCategory() {
+            return category;
+        }
+
+        //null if the file is skipped or cannot be read
+        public Path getDestination() {
+            return destination;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        //the strategy the transfer is expected to use, null if nothing is transferred
+        public FileTransfer.Strategy getStrategy() {
+            return strategy;
+        }
+
+        //why the file cannot be sorted, null if it can
+        public String getProblem() {
+            return problem;
+        }
+    }
+
+    //files going into one category
+    public static final class CategoryTotals {
+        private long files;
+        private long bytes;
+        private long conflicts;
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        //files whose destination existed, renamed, replacing or skipped
+        public long getConflicts() {
+            return conflicts;
+        }
+    }
+
+    //space needed on one destination file store
+    public static final class StoreSpace {
+        private final FileStore store;
+        private long bytesNeeded;
+        private long usableBytes = -1;
+
+        StoreSpace(FileStore store) {
+            this.store = store;
+        }
+
+        public FileStore getStore() {
+            return store;
+        }
+
+        //bytes that are copied rather than moved, linked or cloned within the store
+        public long getBytesNeeded() {
+            return bytesNeeded;
+        }
+
+        //-1 if the store could not tell
+        public long getUsableBytes() {
+            return usableBytes;
+        }
+
+        public boolean isEnough() {
+            return usableBytes < 0 || bytesNeeded <= usableBytes;
+        }
+    }
+
+    //the full outcome of sorting a set of sources, computed up front
+    public static final class Plan {
+        private final FileTransfer.Mode mode;
+        private final ConflictPolicy conflictPolicy;
+        //the names planned into, every planned destination is still claimed here
+        private final DestinationNames names;
+        private final List<Entry> entries;
+        private final Map<String, CategoryTotals> categories = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final List<StoreSpace> stores;
+        private final Map<Outcome, Long> outcomes = new EnumMap<>(Outcome.class);
+        private final Map<FileTransfer.Strategy, Long> strategies = new EnumMap<>(FileTransfer.Strategy.class);
+        private final long unreadableEntries;
+        private long files;
+        private long bytes;
+
+        Plan(FileTransfer.Mode mode, ConflictPolicy conflictPolicy, DestinationNames names, List<Entry> entries,
+             List<StoreSpace> stores, long unreadableEntries) {
+            this.mode = mode;
+            this.conflictPolicy = conflictPolicy;
+            this.names = names;
+            this.entries = Collections.unmodifiableList(entries);
+            this.stores = Collections.unmodifiableList(stores);
+            this.unreadableEntries = unreadableEntries;
+            for (Entry entry : entries) {
+                outcomes.merge(entry.outcome, 1L, Long::sum);
+                if (entry.category == null) {
+                    continue;
+                }
+                CategoryTotals totals = categories.computeIfAbsent(entry.category, k -> new CategoryTotals());
+                if (entry.outcome != Outcome.NEW) {
+                    totals.conflicts++;
+                }
+                if (entry.destination != null) {
+                    totals.files++;
+                    totals.bytes += entry.size;
+                    files++;
+                    bytes += entry.size;
+                    strategies.merge(entry.strategy, 1L, Long::sum);
+                }
+            }
+        }
+
+        public FileTransfer.Mode getMode() {
+            return mode;
+        }
+
+        public ConflictPolicy getConflictPolicy() {
+            return conflictPolicy;
+        }
+
+        //every file found, in the order the sources were given
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        public Map<String, CategoryTotals> getCategories() {
+            return Collections.unmodifiableMap(categories);
+        }
+
+        public List<StoreSpace> getStores() {
+            return stores;
+        }
+
+        public long getCount(Outcome outcome) {
+            return outcomes.getOrDefault(outcome, 0L);
+        }
+
+        //folder entries that could not be listed while walking
+        public long getUnreadableEntries() {
+            return unreadableEntries;
+        }
+
+        //files that will be transferred
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        //false if some destination store is short of space
+        public boolean hasEnoughSpace() {
+            for (StoreSpace space : stores) {
+                if (!space.isEnough()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        //the import tasks of every file that is transferred, already resolved
+        public List<ImportEngine.ImportTask> getTasks() {
+            List<ImportEngine.ImportTask> tasks = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, files));
+            for (Entry entry : entries) {
+                if (entry.destination != null) {
+                    tasks.add(new ImportEngine.ImportTask(entry.source, entry.destination, entry.category, entry.size));
+                }
+            }
+            return tasks;
+        }
+
+        /**
+         * Prepares batch to run the plan's tasks. Unless the policy replaces existing files, a file that
+         * appears at a planned destination before the plan runs is kept, and the policy decides again
+         * for the planned file, as if the file had been there when planning.
+         */
+        public void prepare(ImportEngine.Batch batch) {
+            if (!conflictPolicy.replacesExisting()) {
+                batch.setExclusive(task -> conflictPolicy.resolveAgain(task, names));
+            }
+        }
+
+        //a readable summary: totals per category, conflicts, strategies, space and the first problems
+        public String describe() {
+            String nl = System.lineSeparator();
+            StringBuilder sb = new StringBuilder();
+            sb.append("Transfer: ").append(mode).append(", existing files: ").append(conflictPolicy).append(nl);
+            sb.append(String.format("%,d %s, %s to sort into %d %s", files, files == 1 ? "file" : "files",
+                    FolderStatsCache.formatBytes(bytes), categories.size(), categories.size() == 1 ? "category" : "categories")).append(nl);
+            for (Map.Entry<String, CategoryTotals> category : categories.entrySet()) {
+                CategoryTotals totals = category.getValue();
+                sb.append(String.format("  %-24s %,10d files %10s", category.getKey(), totals.files, FolderStatsCache.formatBytes(totals.bytes)));
+                if (totals.conflicts > 0) {
+                    sb.append(String.format(" %,8d conflicts", totals.conflicts));
+                }
+                sb.append(nl);
+            }
+            sb.append(String.format("Conflicts: %,d renamed, %,d replace existing files, %,d skipped",
+                    getCount(Outcome.RENAMED), getCount(Outcome.REPLACED), getCount(Outcome.SKIPPED))).append(nl);
+            StringBuilder strategyText = new StringBuilder();
+            for (Map.Entry<FileTransfer.Strategy, Long> strategy : strategies.entrySet()) {
+                strategyText.append(strategyText.length() > 0 ? ", " : "").append(String.format("%,d by %s", strategy.getValue(), strategy.getKey()));
+            }
+            sb.append("Strategies: ").append(strategyText.length() > 0 ? strategyText : "none").append(nl);
+            for (StoreSpace space : stores) {
+                sb.append("Space on ").append(space.store).append(": ").append(FolderStatsCache.formatBytes(space.bytesNeeded)).append(" needed, ")
+                        .append(space.usableBytes >= 0 ? FolderStatsCache.formatBytes(space.usableBytes) + " usable" : "usable space unknown")
+                        .append(space.isEnough() ? "" : " - NOT ENOUGH SPACE").append(nl);
+            }
+            long unreadable = getCount(Outcome.UNREADABLE);
+            if (unreadable > 0 || unreadableEntries > 0) {
+                sb.append(String.format("Problems: %,d files cannot be read, %,d folder entries could not be listed", unreadable, unreadableEntries)).append(nl);
+                int listed = 0;
+                for (Entry entry : entries) {
+                    if (entry.problem != null && listed++ < LISTED_PROBLEMS) {
+                        sb.append("  ").append(entry.source).append(": ").append(entry.problem).append(nl);
+                    }
+                }
+                if (unreadable > LISTED_PROBLEMS) {
+                    sb.append("  ... export the plan for the full list").append(nl);
+                }
+            }
+            return sb.toString();
+        }
+
+        //writes every entry as CSV: source, destination, category, bytes, outcome, strategy, problem
+        public void export(Path file) throws IOException {
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                out.write("source,destination,category,bytes,outcome,strategy,problem");
+                out.newLine();
+                for (Entry entry : entries) {
+                    out.write(csv(entry.source.toString()) + "," + csv(entry.destination != null ? entry.destination.toString() : "")
+                            + "," + csv(entry.category != null ? entry.category : "") + "," + entry.size
+                            + "," + entry.outcome.name() + "," + (entry.strategy != null ? entry.strategy.name() : "")
+                            + "," + csv(entry.problem != null ? entry.problem : ""));
+                    out.newLine();
+                }
+            }
+        }
+
+        private static String csv(String text) {
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                return text;
+            }
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    /**
+     * Plans sorting the given files and folders with options into the sorter's destination root.
+     * Blocks until the plan is complete; interrupting the caller stops the planning threads.
+     */
+    public Plan plan(List<Path> sources, FileSorter.Options options, FileTransfer.Mode mode) throws IOException, InterruptedException {
+        long start = Metrics.start();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "sort-planner-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            //walks run side by side, each source's files stay in the order its walk found them
+            List<Future<Listing>> listings = new ArrayList<>();
+            for (Path source : sources) {
+                listings.add(pool.submit(() -> list(source, options.getWalkOptions())));
+            }
+            List<Entry> entries = new ArrayList<>();
+            long unreadableEntries = 0;
+            for (Future<Listing> listing : listings) {
+                Listing done = await(listing);
+                entries.addAll(done.entries);
+                unreadableEntries += done.errors;
+            }
+
+            //stat checks and classification, including content sniffing, in chunks on the pool
+            Map<Path, Optional<FileStore>> sourceStores = new ConcurrentHashMap<>();
+            Map<Path, Boolean> writableFolders = new ConcurrentHashMap<>();
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int from = 0; from < entries.size(); from += CHUNK_FILES) {
+                List<Entry> chunk = entries.subList(from, Math.min(entries.size(), from + CHUNK_FILES));
+                chunks.add(pool.submit(() -> {
+                    for (Entry entry : chunk) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        classify(entry, options, mode, sourceStores, writableFolders);
+                    }
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                await(chunk);
+            }
+
+            //conflicts are resolved in order on this thread, so renames come out the same every time
+            DestinationNames names = new DestinationNames();
+            Map<String, Optional<FileStore>> categoryStores = new HashMap<>();
+            Map<FileStore, StoreSpace> stores = new LinkedHashMap<>();
+            for (Entry entry : entries) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Planning cancelled");
+                }
+                if (entry.problem != null) {
+                    entry.outcome = Outcome.UNREADABLE;
+                    continue;
+                }
+                Path target = sorter.destinationFor(entry.category, entry.source);
+                boolean conflict = names.claimedBy(target) != null || names.exists(target);
+                entry.destination = options.getConflictPolicy().resolve(entry.source, entry.size, entry.lastModified, target, names);
+                entry.outcome = entry.destination == null ? Outcome.SKIPPED
+                        : !conflict ? Outcome.NEW : entry.destination.equals(target) ? Outcome.REPLACED : Outcome.RENAMED;
+                if (entry.destination == null) {
+                    entry.sourceStore = null;
+                    continue;
+                }
+                FileStore destinationStore = categoryStores.computeIfAbsent(entry.category,
+                        category -> Optional.ofNullable(storeOf(sorter.getDestinationRoot().resolve(category)))).orElse(null);
+                entry.strategy = FileTransfer.expectedStrategy(mode, entry.size, entry.sourceStore, destinationStore);
+                entry.sourceStore = null;
+                //moves, links and clones within a store take no new space, anything copied does
+                if (destinationStore != null && entry.strategy == FileTransfer.Strategy.CHANNEL_COPY) {
+                    stores.computeIfAbsent(destinationStore, StoreSpace::new).bytesNeeded += entry.size;
+                }
+            }
+            for (StoreSpace space : stores.values()) {
+                try {
+                    space.usableBytes = space.store.getUsableSpace();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            return new Plan(mode, options.getConflictPolicy(), names, entries, new ArrayList<>(stores.values()), unreadableEntries);
+        } finally {
+            pool.shutdownNow();
+            PLAN_LATENCY.recordSince(start);
+        }
+    }
+
+    //the files of one source
+    private static final class Listing {
+        final List<Entry> entries = new ArrayList<>();
+        long errors;
+    }
+
+    private static Listing list(Path source, DirectoryWalker.Options walkOptions) throws IOException, InterruptedException {
+        Listing listing = new Listing();
+        if (Files.isDirectory(source)) {
+            listing.errors = DirectoryWalker.walk(source, walkOptions, (file, attributes) -> {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Planning cancelled");
+                }
+                listing.entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                return true;
+            }).getErrors();
+            return listing;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            listing.entries.add(new Entry(source, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        } catch (IOException ex) {
+            Entry entry = new Entry(source, 0, 0);
+            entry.problem = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+            listing.entries.add(entry);
+        }
+        return listing;
+    }
+
+    //runs on the pool: finds problems the transfer would fail on, the category and the source's store
+    private void classify(Entry entry, FileSorter.Options options, FileTransfer.Mode mode,
+                          Map<Path, Optional<FileStore>> sourceStores, Map<Path, Boolean> writableFolders) {
+        if (entry.problem != null) {
+            return;
+        }
+        if (!Files.isReadable(entry.source)) {
+            entry.problem = "not readable";
+            return;
+        }
+        Path folder = entry.source.toAbsolutePath().getParent();
+        //a move that cannot delete the source fails only after its bytes were copied
+        if (mode.removesSource() && !writableFolders.computeIfAbsent(folder, Files::isWritable)) {
+            entry.problem = "folder is read-only, the file cannot be moved";
+            return;
+        }
+        String fixedCategory = options.getFixedCategory();
+        entry.category = fixedCategory != null ? fixedCategory
+                : sorter.determineCategory(entry.source, entry.size, entry.lastModified, options.isSniffContent());
+        entry.sourceStore = sourceStores.computeIfAbsent(folder, f -> Optional.ofNullable(storeOf(f))).orElse(null);
+    }
+
+    //the store of path, or of its closest existing parent for folders not created yet; null if unknown
+    private static FileStore storeOf(Path path) {
+        for (Path p = path.toAbsolutePath(); p != null; p = p.getParent()) {
+            if (Files.exists(p)) {
+                try {
+                    return Files.getFileStore(p);
+                } catch (IOException ex) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    //waits for a pool task and hands on its failure
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
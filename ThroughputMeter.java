@@ -0,0 +1,51 @@
+
+/**
+ * Smoothed speed of one transfer, fed with its running byte count.
+ * An exponentially weighted moving average whose weight depends on the time between samples,
+ * so the result does not depend on how often it is sampled; a stall decays it towards zero
+ * over a few seconds instead of dropping it at once. Not thread-safe, sample from one thread.
+ */
+public final class ThroughputMeter {
+
+    //roughly how many seconds of history the average reflects
+    private static final double TIME_CONSTANT_NANOS = 3_000_000_000.0;
+
+    private long lastBytes;
+    private long lastNanos;
+    private double bytesPerSecond = -1;
+
+    public void update(long bytesDone, long nowNanos) {
+        if (lastNanos == 0) {
+            lastBytes = bytesDone;
+            lastNanos = nowNanos;
+            return;
+        }
+        long elapsed = nowNanos - lastNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        //a transfer that started over counts as no progress
+        double instant = Math.max(0, bytesDone - lastBytes) * 1_000_000_000.0 / elapsed;
+        if (bytesPerSecond < 0) {
+            bytesPerSecond = instant;
+        } else {
+            double weight = 1 - Math.exp(-elapsed / TIME_CONSTANT_NANOS);
+            bytesPerSecond += weight * (instant - bytesPerSecond);
+        }
+        lastBytes = bytesDone;
+        lastNanos = nowNanos;
+    }
+
+    //0 until two samples were taken
+    public double getBytesPerSecond() {
+        return Math.max(0, bytesPerSecond);
+    }
+
+    //estimated seconds until bytesTotal is reached, -1 if unknown or stalled
+    public long secondsLeft(long bytesTotal) {
+        if (bytesTotal < 0 || bytesPerSecond < 1) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, bytesTotal - lastBytes) / bytesPerSecond);
+    }
+}
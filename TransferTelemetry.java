@@ -0,0 +1,103 @@
+
+import javax.swing.Timer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes the speed and time left of running transfers into the downloads table.
+ * Transfers only bump their byte counters; a timer samples them at a fixed rate, smooths
+ * them with a {@link ThroughputMeter} and sends all changed rows to the table as one
+ * transient update event per tick, however many transfers are running. Those events carry
+ * no lasting state, so the journal ignores them. Used on the EDT only.
+ */
+public final class TransferTelemetry {
+
+    private final DownloadTableModel model;
+    private final Timer timer;
+    private final Map<Long, Tracked> tracked = new HashMap<>();
+
+    private static final class Tracked {
+        final LongSupplier bytesDone;
+        final LongSupplier bytesTotal;
+        final ThroughputMeter meter = new ThroughputMeter();
+
+        Tracked(LongSupplier bytesDone, LongSupplier bytesTotal) {
+            this.bytesDone = bytesDone;
+            this.bytesTotal = bytesTotal;
+        }
+    }
+
+    public TransferTelemetry(DownloadTableModel model, int refreshesPerSecond) {
+        this.model = model;
+        this.timer = new Timer(1000 / Math.max(1, refreshesPerSecond), e -> publish());
+    }
+
+    /**
+     * Shows the speed of a transfer in the row with rowId until it is untracked or the row is
+     * removed. bytesTotal may return -1 while the size is unknown.
+     */
+    public void track(long rowId, LongSupplier bytesDone, LongSupplier bytesTotal) {
+        tracked.put(rowId, new Tracked(bytesDone, bytesTotal));
+        timer.start();
+    }
+
+    //the caller writes the row's final values
+    public void untrack(long rowId) {
+        tracked.remove(rowId);
+    }
+
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    private void publish() {
+        long now = System.nanoTime();
+        int firstChanged = Integer.MAX_VALUE;
+        int lastChanged = -1;
+        for (Iterator<Map.Entry<Long, Tracked>> iterator = tracked.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, Tracked> entry = iterator.next();
+            int row = model.rowForId(entry.getKey());
+            if (row < 0) {
+                iterator.remove();
+                continue;
+            }
+            Tracked transfer = entry.getValue();
+            transfer.meter.update(transfer.bytesDone.getAsLong(), now);
+            long secondsLeft = transfer.meter.secondsLeft(transfer.bytesTotal.getAsLong());
+            //non-short-circuit: both cells are always written
+            boolean changed = model.putTransient(row, DownloadTableModel.COL_TRANSFER_RATE, formatRate(transfer.meter.getBytesPerSecond()))
+                    | model.putTransient(row, DownloadTableModel.COL_TIME_LEFT, secondsLeft >= 0 ? formatDuration(secondsLeft) : "N/A");
+            if (changed) {
+                firstChanged = Math.min(firstChanged, row);
+                lastChanged = Math.max(lastChanged, row);
+            }
+        }
+        if (lastChanged >= 0) {
+            model.fireTransientRowsUpdated(firstChanged, lastChanged);
+        }
+        if (tracked.isEmpty()) {
+            timer.stop();
+        }
+    }
+
+    //e.g. "1h 02m", "3m 05s", "12s"
+    public static String formatDuration(long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%dh %02dm", seconds / 3600, (seconds % 3600) / 60);
+        }
+        if (seconds >= 60) {
+            return String.format("%dm %02ds", seconds / 60, seconds % 60);
+        }
+        return seconds + "s";
+    }
+
+    //e.g. "850 KB/s", "12.4 MB/s"
+    public static String formatRate(double bytesPerSecond) {
+        if (bytesPerSecond >= 1024 * 1024) {
+            return String.format("%.1f MB/s", bytesPerSecond / (1024 * 1024));
+        }
+        return String.format("%.0f KB/s", bytesPerSecond / 1024);
+    }
+}
@@ -0,0 +1,500 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Soft delete for folders and table entries.
+ * Trashing renames the item into directory/&lt;id&gt;/ on the same file system, so it costs
+ * the same whatever the item's size, and keeps the removed table rows in a manifest
+ * directory/&lt;id&gt;.trashinfo written in the background. Items can be restored to their
+ * original path until they are purged: a low-priority purger deletes items older than the
+ * retention window while the application is idle, using a {@link DeleteEngine}.
+ * <p>
+ * Crash safety: a folder or file is only renamed once a manifest naming its original path is
+ * on disk, so an item directory without a manifest never holds anything restorable and is
+ * purged. A manifest whose item is gone is dropped. A purge removes the manifest before the
+ * files, so a purge cut short only leaves files that are purged later.
+ */
+public final class TrashBin implements AutoCloseable {
+
+    public static final long DEFAULT_RETENTION_DAYS = 7;
+    private static final String MANIFEST_SUFFIX = ".trashinfo";
+    private static final int MANIFEST_MAGIC = 0x46535452; // FSTR
+    //version 2 stores strings as int length and UTF-8 bytes, version 1 used writeUTF
+    private static final int MANIFEST_VERSION = 2;
+    private static final String SETTINGS_FILE = "settings.properties";
+    private static final long PURGE_INTERVAL_SECONDS = 60;
+    //how often a running purge checks that the application is still idle
+    private static final long IDLE_CHECK_MILLIS = 250;
+
+    private final Path directory;
+    //trashed items by id, oldest first
+    private final Map<String, Item> items = new LinkedHashMap<>();
+    private final ExecutorService manifestWriter;
+    private final ScheduledExecutorService purger;
+    private final DeleteEngine purgeEngine = new DeleteEngine(2, Thread.MIN_PRIORITY);
+    private volatile long retentionMillis = TimeUnit.DAYS.toMillis(DEFAULT_RETENTION_DAYS);
+    private Consumer<IOException> errorHandler = Throwable::printStackTrace;
+    private long lastId;
+
+    /**
+     * One trashed folder, file or set of table entries.
+     */
+    public static final class Item {
+        private final String id;
+        private final Path original;
+        private final long deletedAt;
+        private final List<Object[]> rows;
+
+        Item(String id, Path original, long deletedAt, List<Object[]> rows) {
+            this.id = id;
+            this.original = original;
+            this.deletedAt = deletedAt;
+            this.rows = rows;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        //where the folder or file was, null if only table entries were deleted
+        public Path getOriginal() {
+            return original;
+        }
+
+        public long getDeletedAt() {
+            return deletedAt;
+        }
+
+        //table rows removed together with the item, in their original column order
+        public List<Object[]> getRows() {
+            return Collections.unmodifiableList(rows);
+        }
+
+        @Override
+        public String toString() {
+            return original != null ? original.toString() : rows.size() + " table entr" + (rows.size() == 1 ? "y" : "ies");
+        }
+    }
+
+    public TrashBin(Path directory) {
+        this.directory = directory;
+        this.manifestWriter = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "trash-manifest");
+            t.setDaemon(true);
+            return t;
+        });
+        this.purger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "trash-purger");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    //called with errors of background manifest writes and purges
+    public void setErrorHandler(Consumer<IOException> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Reads the settings and the manifests of the items still in the trash.
+     * Manifests whose item has disappeared are dropped.
+     */
+    public synchronized void load() throws IOException {
+        Files.createDirectories(directory);
+        Path settings = directory.resolve(SETTINGS_FILE);
+        if (Files.exists(settings)) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(settings)) {
+                properties.load(in);
+            }
+            try {
+                retentionMillis = TimeUnit.DAYS.toMillis(Long.parseLong(properties.getProperty("retentionDays", String.valueOf(DEFAULT_RETENTION_DAYS))));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid trash settings in " + settings + ": " + ex.getMessage(), ex);
+            }
+        }
+        List<Item> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + MANIFEST_SUFFIX)) {
+            for (Path manifest : stream) {
+                Item item;
+                try {
+                    item = readManifest(manifest);
+                } catch (IOException | RuntimeException ex) {
+                    errorHandler.accept(new IOException("Unreadable trash manifest " + manifest + ": " + ex.getMessage(), ex));
+                    continue;
+                }
+                if (item.original != null && !Files.exists(payloadOf(item), LinkOption.NOFOLLOW_LINKS)) {
+                    Files.deleteIfExists(manifest);
+                    continue;
+                }
+                loaded.add(item);
+            }
+        }
+        loaded.sort((a, b) -> Long.compare(a.deletedAt, b.deletedAt));
+        items.clear();
+        for (Item item : loaded) {
+            items.put(item.id, item);
+        }
+    }
+
+    public long getRetentionDays() {
+        return TimeUnit.MILLISECONDS.toDays(retentionMillis);
+    }
+
+    //items older than this are purged, 0 purges them on the next idle run
+    public void setRetentionDays(long days) throws IOException {
+        if (days < 0) {
+            throw new IllegalArgumentException("Retention must not be negative: " + days);
+        }
+        retentionMillis = TimeUnit.DAYS.toMillis(days);
+        Properties properties = new Properties();
+        properties.setProperty("retentionDays", String.valueOf(days));
+        Files.createDirectories(directory);
+        try (OutputStream out = Files.newOutputStream(directory.resolve(SETTINGS_FILE))) {
+            properties.store(out, "FileSortify trash");
+        }
+    }
+
+    /**
+     * Moves original into the trash with an atomic rename and remembers the given table rows.
+     * Fails, leaving everything in place, if the rename is not possible, e.g. because original
+     * lies on another file system. With a null original only the rows are kept.
+     * <p>
+     * The original path is written and synced to the manifest before the rename, the rows
+     * follow in the background. If writing them fails the item can still be restored, only
+     * without its table entries.
+     */
+    public synchronized Item trash(Path original, List<Object[]> rows) throws IOException {
+        long now = System.currentTimeMillis();
+        Item item = new Item(nextId(now), original, now, new ArrayList<>(rows));
+        if (original != null) {
+            Files.createDirectories(directory);
+            writeManifest(new Item(item.id, original, now, Collections.emptyList()), true);
+            Path payload = payloadOf(item);
+            try {
+                Files.createDirectories(payload.getParent());
+                Files.move(original, payload, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Files.deleteIfExists(payload.getParent());
+                Files.deleteIfExists(manifestOf(item));
+                throw ex;
+            }
+        }
+        items.put(item.id, item);
+        manifestWriter.execute(() -> {
+            try {
+                writeManifest(item, false);
+            } catch (IOException ex) {
+                errorHandler.accept(ex);
+            }
+        });
+        return item;
+    }
+
+    /**
+     * Takes an item out of the trash, moving its folder or file back to where it was.
+     * Fails if the item has been purged or something new exists at the original path.
+     */
+    public synchronized Item restore(String id) throws IOException {
+        Item item = items.get(id);
+        if (item == null) {
+            throw new NoSuchFileException(id, null, "no longer in the trash");
+        }
+        if (item.original != null) {
+            if (Files.exists(item.original, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(item.original.toString(), null, "something new was created there");
+            }
+            Files.createDirectories(item.original.getParent());
+            Files.move(payloadOf(item), item.original, StandardCopyOption.ATOMIC_MOVE);
+        }
+        items.remove(id);
+        //queued behind the manifest written by trash()
+        manifestWriter.execute(() -> {
+            try {
+                Files.deleteIfExists(manifestOf(item));
+                Files.deleteIfExists(directory.resolve(item.id));
+            } catch (IOException ex) {
+                errorHandler.accept(ex);
+            }
+        });
+        return item;
+    }
+
+    //the most recently trashed item, null if the trash is empty
+    public synchronized Item getLatest() {
+        Item latest = null;
+        for (Item item : items.values()) {
+            latest = item;
+        }
+        return latest;
+    }
+
+    //all items, oldest first
+    public synchronized List<Item> getItems() {
+        return new ArrayList<>(items.values());
+    }
+
+    /**
+     * Starts purging expired items in the background, checking every minute.
+     * A purge only runs while idle returns true and stops as soon as it returns false.
+     */
+    public void startPurger(BooleanSupplier idle) {
+        purger.scheduleWithFixedDelay(() -> purgeExpired(idle), PURGE_INTERVAL_SECONDS, PURGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    //purges the given items now, in the background and regardless of idleness
+    public void purgeLater(List<String> ids) {
+        List<Item> toPurge = new ArrayList<>();
+        synchronized (this) {
+            for (String id : ids) {
+                Item item = items.remove(id);
+                if (item != null) {
+                    toPurge.add(item);
+                }
+            }
+        }
+        purger.execute(() -> {
+            for (Item item : toPurge) {
+                purge(item, () -> true);
+            }
+        });
+    }
+
+    //stops purging; manifests already queued are still written
+    @Override
+    public void close() {
+        purger.shutdownNow();
+        purgeEngine.shutdown();
+        manifestWriter.shutdown();
+        try {
+            manifestWriter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void purgeExpired(BooleanSupplier idle) {
+        if (!idle.getAsBoolean()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        List<Item> expired = new ArrayList<>();
+        //item folders without a manifest: left behind by an interrupted trash or purge
+        List<Path> orphans = new ArrayList<>();
+        synchronized (this) {
+            for (Item item : items.values()) {
+                if (item.deletedAt <= cutoff) {
+                    expired.add(item);
+                }
+            }
+            for (Item item : expired) {
+                items.remove(item.id);
+            }
+            //listed under the lock so an item trashed meanwhile is never taken for an orphan
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path path : stream) {
+                    String id = path.getFileName().toString();
+                    //a manifest that could not be read still keeps its folder for a restore by hand
+                    if (!items.containsKey(id) && !isExpired(expired, path) && !Files.exists(directory.resolve(id + MANIFEST_SUFFIX))) {
+                        orphans.add(path);
+                    }
+                }
+            } catch (IOException ex) {
+                errorHandler.accept(ex);
+            }
+        }
+        for (Item item : expired) {
+            if (!purge(item, idle)) {
+                return;
+            }
+        }
+        for (Path orphan : orphans) {
+            if (!deleteTree(orphan, idle)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isExpired(List<Item> expired, Path folder) {
+        for (Item item : expired) {
+            if (item.id.equals(folder.getFileName().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //false if the purge stopped because the application became busy
+    private boolean purge(Item item, BooleanSupplier idle) {
+        try {
+            //ordered after the manifest write, so no manifest reappears after this
+            manifestWriter.submit(() -> {
+                Files.deleteIfExists(manifestOf(item));
+                return null;
+            }).get();
+        } catch (Exception ex) {
+            errorHandler.accept(new IOException("Cannot remove trash manifest of " + item + ": " + ex.getMessage(), ex));
+            return true;
+        }
+        return item.original == null || deleteTree(directory.resolve(item.id), idle);
+    }
+
+    private boolean deleteTree(Path path, BooleanSupplier idle) {
+        DeleteEngine.Job job = purgeEngine.delete(path);
+        try {
+            while (!job.await(IDLE_CHECK_MILLIS)) {
+                if (!idle.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                    job.cancel();
+                    job.await(Long.MAX_VALUE);
+                    return false;
+                }
+            }
+        } catch (InterruptedException ex) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (job.getFailureCount() > 0) {
+            errorHandler.accept(new IOException("Could not purge " + job.getFailureCount() + " item(s) from the trash, e.g. " + job.getFailures().get(0)));
+        }
+        return !job.isCancelled();
+    }
+
+    // --- Manifests ---
+
+    private String nextId(long now) {
+        long id = Math.max(now, lastId + 1);
+        while (Files.exists(directory.resolve(String.valueOf(id))) || Files.exists(directory.resolve(id + MANIFEST_SUFFIX))) {
+            id++;
+        }
+        lastId = id;
+        return String.valueOf(id);
+    }
+
+    private Path payloadOf(Item item) {
+        return directory.resolve(item.id).resolve(item.original.getFileName().toString());
+    }
+
+    private Path manifestOf(Item item) {
+        return directory.resolve(item.id + MANIFEST_SUFFIX);
+    }
+
+    //sync forces the manifest to disk before it takes its final name
+    private void writeManifest(Item item, boolean sync) throws IOException {
+        Path manifest = manifestOf(item);
+        Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            writeString(out, item.original != null ? item.original.toString() : null);
+            out.writeLong(item.deletedAt);
+            out.writeInt(item.rows.size());
+            for (Object[] cells : item.rows) {
+                out.writeShort(cells.length);
+                for (Object cell : cells) {
+                    writeString(out, cell != null ? cell.toString() : null);
+                }
+            }
+            out.flush();
+            if (sync) {
+                channel.force(true);
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Item readManifest(Path manifest) throws IOException {
+        String name = manifest.getFileName().toString();
+        String id = name.substring(0, name.length() - MANIFEST_SUFFIX.length());
+        long size = Files.size(manifest);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest), 64 * 1024))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("Unrecognized trash manifest: " + manifest);
+            }
+            int version = in.readInt();
+            if (version != 1 && version != MANIFEST_VERSION) {
+                throw new IOException("Unrecognized trash manifest: " + manifest);
+            }
+            String original = readString(in, version, size);
+            long deletedAt = in.readLong();
+            int rowCount = in.readInt();
+            if (rowCount < 0 || rowCount > size) {
+                throw new IOException("Corrupt trash manifest: " + manifest);
+            }
+            List<Object[]> rows = new ArrayList<>(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                Object[] cells = new Object[in.readUnsignedShort()];
+                for (int column = 0; column < cells.length; column++) {
+                    cells[column] = readString(in, version, size);
+                }
+                rows.add(cells);
+            }
+            return new Item(id, original != null ? Paths.get(original) : null, deletedAt, rows);
+        } catch (EOFException ex) {
+            throw new IOException("Truncated trash manifest: " + manifest, ex);
+        }
+    }
+
+    //not writeUTF: that fails on strings over 64 KB, e.g. a long error description
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    //limit is the manifest size, no string in it can be longer
+    private static String readString(DataInputStream in, int version, long limit) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        if (version == 1) {
+            return in.readUTF();
+        }
+        int length = in.readInt();
+        if (length < 0 || length > limit) {
+            throw new IOException("Corrupt string length in trash manifest: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
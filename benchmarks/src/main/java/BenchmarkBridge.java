@@ -0,0 +1,77 @@
+
+import benchmarks.AppBridge;
+
+import javax.swing.table.TableModel;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Gives the benchmarks in package benchmarks access to the application classes.
+ */
+public final class BenchmarkBridge implements AppBridge {
+
+    private final FileTransfer fileTransfer = new FileTransfer();
+
+    @Override
+    public Function<String, String> categoryClassifier() {
+        CategoryRules rules = new CategoryRules(CategoryRules.defaultRules());
+        return fileName -> rules.classify(fileName, -1, -1);
+    }
+
+    @Override
+    public void channelCopy(Path source, Path destination) throws IOException {
+        FileTransfer.channelCopy(source, destination, bytes -> { }, () -> false);
+    }
+
+    @Override
+    public String transfer(Path source, Path destination, String mode) throws IOException {
+        return fileTransfer.transfer(source, destination, FileTransfer.Mode.valueOf(mode), bytes -> { }, () -> false).name();
+    }
+
+    @Override
+    public TableModel newDownloadTable(List<Object[]> rows) {
+        DownloadTableModel table = new DownloadTableModel();
+        table.addRows(rows);
+        return table;
+    }
+
+    @Override
+    public void addRow(TableModel table, Object[] row) {
+        ((DownloadTableModel) table).addRow(row);
+    }
+
+    @Override
+    public void addRows(TableModel table, List<Object[]> rows) {
+        ((DownloadTableModel) table).addRows(rows);
+    }
+
+    @Override
+    public void removeRows(TableModel table, int[] rows) {
+        ((DownloadTableModel) table).removeRows(rows);
+    }
+
+    @Override
+    public List<Object[]> loadDownloads(Path directory) throws IOException {
+        return new DownloadJournal(directory, "downloads").load(null);
+    }
+
+    @Override
+    public void saveDownloads(Path directory, TableModel table) throws IOException {
+        DownloadJournal journal = new DownloadJournal(directory, "downloads");
+        journal.load(null);
+        journal.attach(table);
+        //a whole-table change makes the journal write a snapshot
+        ((DownloadTableModel) table).fireTableDataChanged();
+        journal.close();
+    }
+
+    @Override
+    public AutoCloseable attachJournal(Path directory, TableModel table) throws IOException {
+        DownloadJournal journal = new DownloadJournal(directory, "downloads");
+        journal.load(null);
+        journal.attach(table);
+        return journal::close;
+    }
+}
@@ -0,0 +1,50 @@
+package benchmarks;
+
+import javax.swing.table.TableModel;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The application classes live in the unnamed package, which a named package cannot import,
+ * and JMH only accepts benchmarks in a named package. BenchmarkBridge, in the unnamed package
+ * of this module, implements this interface on top of the application and is loaded by name,
+ * so a benchmark method pays one interface call on top of the code it measures.
+ */
+public interface AppBridge {
+
+    static AppBridge load() {
+        try {
+            return (AppBridge) Class.forName("BenchmarkBridge").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("BenchmarkBridge is missing from the classpath", ex);
+        }
+    }
+
+    //the category the downloads window picks for a file name, using the default rules
+    Function<String, String> categoryClassifier();
+
+    //FileTransfer.channelCopy, the transferTo loop every mode falls back to
+    void channelCopy(Path source, Path destination) throws IOException;
+
+    //FileTransfer.transfer in the given mode (COPY, MOVE, LINK), returns the strategy used
+    String transfer(Path source, Path destination, String mode) throws IOException;
+
+    TableModel newDownloadTable(List<Object[]> rows);
+
+    void addRow(TableModel table, Object[] row);
+
+    void addRows(TableModel table, List<Object[]> rows);
+
+    void removeRows(TableModel table, int[] rows);
+
+    //what the window does on startup: read the snapshot and replay the journals
+    List<Object[]> loadDownloads(Path directory) throws IOException;
+
+    //writes a full snapshot of table into an empty directory and waits until it is on disk
+    void saveDownloads(Path directory, TableModel table) throws IOException;
+
+    //journals every later change of table until closed, like the window does
+    AutoCloseable attachJournal(Path directory, TableModel table) throws IOException;
+}
@@ -0,0 +1,26 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with the given arguments, writing results as JSON to jmh-result.json unless the
+ * arguments choose another result format or file, so runs of two commits can be compared.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.addAll(List.of("-rf", "json"));
+        }
+        if (!arguments.contains("-rff")) {
+            arguments.addAll(List.of("-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+}
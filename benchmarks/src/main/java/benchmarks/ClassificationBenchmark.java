@@ -0,0 +1,50 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * determineCategory over a corpus of typical download names, reported per file name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassificationBenchmark {
+
+    private static final int CORPUS_SIZE = 10_000;
+
+    private Function<String, String> classifier;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        classifier = AppBridge.load().categoryClassifier();
+        List<String> corpus = Corpus.fileNames(CORPUS_SIZE, 42);
+        names = corpus.toArray(new String[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void determineCategory(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(classifier.apply(name));
+        }
+    }
+}
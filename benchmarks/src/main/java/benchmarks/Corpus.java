@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic test data shaped like a real downloads folder: camera and screenshot names,
+ * versioned installers, documents with copies, media, archives with double extensions,
+ * upper-case extensions, names without one and a share of names no rule knows.
+ */
+final class Corpus {
+
+    private static final String[] DOCUMENT_STEMS = {"Invoice", "report_final", "Resume", "Lecture Notes", "contract-signed", "Q3 Budget", "thesis draft"};
+    private static final String[] DOCUMENT_EXTENSIONS = {"pdf", "docx", "xlsx", "pptx", "txt", "odt", "csv", "md"};
+    private static final String[] MEDIA_EXTENSIONS = {"mp4", "mkv", "mp3", "flac", "avi", "mov", "wav"};
+    private static final String[] ARCHIVE_NAMES = {"backup.tar.gz", "sources.zip", "photos.7z", "dataset.tar.xz", "game.rar"};
+    private static final String[] PROGRAM_NAMES = {"setup-x64-v%d.%d.%d.exe", "installer_%d.%d.msi", "app-%d.%d.%d.dmg", "tool_%d.%d.%d_amd64.deb"};
+    private static final String[] ODD_NAMES = {"README", "Makefile", ".bashrc", "LICENSE", "data.%d", "file.unknownext", "noext_%d"};
+    private static final String[] STATUSES = {"Imported", "Imported", "Imported", "Completed", "Completed", "Stopped", "Error"};
+    private static final String[] CATEGORIES = {"Documents", "Images", "Videos", "Music", "Programs", "Compressed", "Other"};
+
+    private Corpus() {
+    }
+
+    static List<String> fileNames(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(fileName(random, i));
+        }
+        return names;
+    }
+
+    //rows as the downloads table stores them, every cell a String
+    static List<Object[]> downloadRows(int count, long seed) {
+        Random random = new Random(seed);
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = fileName(random, i);
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            String status = STATUSES[random.nextInt(STATUSES.length)];
+            String lastTry = String.format(Locale.ROOT, "2024-%02d-%02d %02d:%02d", 1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60));
+            String folder = "/home/user/FileSortifyDemo/All Downloads/" + category + (random.nextInt(4) == 0 ? "/Archive " + random.nextInt(20) : "");
+            rows.add(new Object[]{name, (random.nextInt(1 << 20) * (long) (1 + random.nextInt(4096))) + " bytes", status, "N/A", "N/A", lastTry,
+                    "Imported from local file | Category: " + category + " | Transfer: atomic move", folder + "/" + name});
+        }
+        return rows;
+    }
+
+    private static String fileName(Random random, int index) {
+        switch (random.nextInt(10)) {
+            case 0:
+            case 1:
+                return String.format(Locale.ROOT, "IMG_2024%02d%02d_%06d.%s", 1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(1_000_000),
+                        random.nextInt(5) == 0 ? "JPG" : random.nextBoolean() ? "jpg" : "heic");
+            case 2:
+                return "Screenshot " + (2020 + random.nextInt(5)) + "-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10) + " at " + random.nextInt(24) + "." + random.nextInt(60) + ".png";
+            case 3:
+            case 4:
+                String copy = random.nextInt(4) == 0 ? " (" + (1 + random.nextInt(3)) + ")" : "";
+                return DOCUMENT_STEMS[random.nextInt(DOCUMENT_STEMS.length)] + "-" + index + copy + "." + DOCUMENT_EXTENSIONS[random.nextInt(DOCUMENT_EXTENSIONS.length)];
+            case 5:
+                return "Show.S0" + (1 + random.nextInt(9)) + "E" + (10 + random.nextInt(20)) + ".1080p.WEB-DL." + MEDIA_EXTENSIONS[random.nextInt(MEDIA_EXTENSIONS.length)];
+            case 6:
+                return index + "_" + ARCHIVE_NAMES[random.nextInt(ARCHIVE_NAMES.length)];
+            case 7:
+                return String.format(Locale.ROOT, PROGRAM_NAMES[random.nextInt(PROGRAM_NAMES.length)], random.nextInt(10), random.nextInt(20), random.nextInt(100));
+            case 8:
+                return String.format(Locale.ROOT, ODD_NAMES[random.nextInt(ODD_NAMES.length)], index);
+            default:
+                return "Ünïcödé Dokument " + index + (random.nextBoolean() ? ".pdf" : ".mp3");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.table.TableModel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Persistence of the downloads table at 10k, 100k and 1M rows: loading it at startup,
+ * writing a full snapshot, and journaling a single row change as the window does on every edit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class JournalBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private AppBridge app;
+    private Path root;
+    private Path loadDirectory;
+    private Path saveDirectory;
+    private TableModel table;
+    //saving fires a whole-table change, which the live journal would answer with a snapshot of its own
+    private TableModel saveTable;
+    private AutoCloseable journal;
+    private int updates;
+
+    @Setup
+    public void setUp() throws Exception {
+        app = AppBridge.load();
+        root = Files.createTempDirectory("filesortify-journal");
+        List<Object[]> data = Corpus.downloadRows(rows, 42);
+        table = app.newDownloadTable(data);
+        saveTable = app.newDownloadTable(data);
+        loadDirectory = root.resolve("load");
+        app.saveDownloads(loadDirectory, saveTable);
+        journal = app.attachJournal(root.resolve("live"), table);
+    }
+
+    @Setup(Level.Invocation)
+    public void freshSaveDirectory() throws IOException {
+        saveDirectory = Files.createTempDirectory(root, "save");
+    }
+
+    @TearDown(Level.Invocation)
+    public void dropSaveDirectory() throws IOException {
+        delete(saveDirectory);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        journal.close();
+        delete(root);
+    }
+
+    @Benchmark
+    public List<Object[]> loadDownloads() throws IOException {
+        return app.loadDownloads(loadDirectory);
+    }
+
+    @Benchmark
+    public void saveDownloads() throws IOException {
+        app.saveDownloads(saveDirectory, saveTable);
+    }
+
+    //cost on the EDT of one journaled edit, the writer thread syncs in the background
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void journalRowUpdate() {
+        int row = updates++ % table.getRowCount();
+        table.setValueAt((updates & 1) == 0 ? "Completed" : "Stopped", row, 2);
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path each : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(each);
+            }
+        }
+    }
+}
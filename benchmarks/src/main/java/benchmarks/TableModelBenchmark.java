@@ -0,0 +1,91 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.table.TableModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert and remove throughput of the downloads table model, reported per row.
+ * Each operation restores the table's size, so every invocation sees the same table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableModelBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private AppBridge app;
+    private TableModel table;
+    private List<Object[]> batch;
+    private int[] tail;
+    private int[] scattered;
+
+    @Setup
+    public void setUp() {
+        app = AppBridge.load();
+        table = app.newDownloadTable(Corpus.downloadRows(rows, 42));
+        batch = Corpus.downloadRows(BATCH, 7);
+        tail = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            tail[i] = rows + i;
+        }
+        Random random = new Random(3);
+        scattered = random.ints(0, rows).distinct().limit(BATCH).sorted().toArray();
+    }
+
+    //an import tick: a batch of rows in one event, then the same rows deleted
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void addRowsThenRemove() {
+        app.addRows(table, batch);
+        app.removeRows(table, tail);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void addRowThenRemove() {
+        for (Object[] row : batch) {
+            app.addRow(table, row);
+        }
+        app.removeRows(table, tail);
+    }
+
+    //deleting a selection spread over the whole table, the rows are added back at the end
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void removeScatteredThenAdd() {
+        List<Object[]> removed = new ArrayList<>(BATCH);
+        int columns = table.getColumnCount();
+        for (int row : scattered) {
+            Object[] values = new Object[columns];
+            for (int column = 0; column < columns; column++) {
+                values[column] = table.getValueAt(row, column);
+            }
+            removed.add(values);
+        }
+        app.removeRows(table, scattered);
+        app.addRows(table, removed);
+    }
+}
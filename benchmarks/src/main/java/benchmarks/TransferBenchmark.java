@@ -0,0 +1,104 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One file transfer per operation, for each strategy and file size bucket.
+ * "stream" and "files-copy" are the JDK baselines, "transfer-to" is the channel copy every
+ * import mode falls back to and "move" is the import engine's MOVE mode (a rename when source
+ * and destination share a filesystem). Pass -p dir=/dev/shm to measure tmpfs instead of the
+ * local disk under java.io.tmpdir.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+    @Param({"stream", "files-copy", "transfer-to", "move"})
+    public String strategy;
+
+    @Param({"4096", "1048576", "67108864"})
+    public int size;
+
+    //empty for java.io.tmpdir
+    @Param({""})
+    public String dir;
+
+    private AppBridge app;
+    private Path root;
+    private Path source;
+    private Path destination;
+
+    @Setup
+    public void setUp() throws IOException {
+        app = AppBridge.load();
+        Path parent = dir.isEmpty() ? Paths.get(System.getProperty("java.io.tmpdir")) : Paths.get(dir);
+        root = Files.createTempDirectory(parent, "filesortify-transfer");
+        source = root.resolve("in").resolve("source.bin");
+        destination = root.resolve("out").resolve("destination.bin");
+        Files.createDirectories(source.getParent());
+        Files.createDirectories(destination.getParent());
+        byte[] data = new byte[size];
+        new Random(7).nextBytes(data);
+        Files.write(source, data);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object transfer() throws IOException {
+        switch (strategy) {
+            case "stream":
+                try (InputStream in = Files.newInputStream(source); OutputStream out = Files.newOutputStream(destination)) {
+                    return in.transferTo(out);
+                }
+            case "files-copy":
+                return Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+            case "transfer-to":
+                app.channelCopy(source, destination);
+                return destination;
+            case "move":
+                //the file goes back and forth, so every operation is one move
+                String used = app.transfer(source, destination, "MOVE");
+                Path moved = source;
+                source = destination;
+                destination = moved;
+                return used;
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + strategy);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs DownloadEngine against a local com.sun.net.httpserver stand-in: a server that serves byte
+ * ranges, one that serves whole files only, one that answers a range request with the whole
+ * file, one that drops connections halfway and one that has nothing.
+ */
+class DownloadEngineTest {
+
+    //five segments of one block each
+    private static final int FILE_BYTES = 5 * DownloadState.BLOCK_BYTES;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    @TempDir
+    Path dir;
+
+    private final byte[] content = new byte[FILE_BYTES];
+    //connections the flaky endpoint still drops
+    private final AtomicInteger drops = new AtomicInteger(3);
+    private final AtomicInteger flakyRequests = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private DownloadEngine engine;
+
+    @BeforeEach
+    void start() throws IOException {
+        new Random(42).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ranged/", exchange -> serve(exchange, true, true, false));
+        server.createContext("/plain/", exchange -> serve(exchange, false, false, false));
+        server.createContext("/ignores-range/", exchange -> serve(exchange, true, false, false));
+        server.createContext("/flaky/", exchange -> serve(exchange, true, true, true));
+        server.createContext("/missing/", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        engine = new DownloadEngine(dir.resolve("state"));
+    }
+
+    @AfterEach
+    void stop() {
+        engine.shutdown();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void rangedDownloadUsesParallelSegments() throws Exception {
+        DownloadEngine.Download download = download("/ranged/file.bin");
+        assertEquals(DownloadEngine.State.COMPLETED, download.getState(), () -> String.valueOf(download.getError()));
+        assertTrue(download.getConnections() > 1, "segments: " + download.getConnections());
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("file.bin")));
+        assertFalse(Files.exists(dir.resolve("file.bin" + DownloadEngine.PART_SUFFIX)));
+        assertFalse(engine.canResume(dir.resolve("file.bin")));
+    }
+
+    @Test
+    void downloadWithoutRangesUsesOneStream() throws Exception {
+        DownloadEngine.Download download = download("/plain/file.bin");
+        assertEquals(DownloadEngine.State.COMPLETED, download.getState(), () -> String.valueOf(download.getError()));
+        assertEquals(1, download.getConnections());
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("file.bin")));
+    }
+
+    @Test
+    void wholeFileForRangeRequestFails() throws Exception {
+        DownloadEngine.Download download = download("/ignores-range/file.bin");
+        assertEquals(DownloadEngine.State.FAILED, download.getState());
+        assertTrue(download.getError().getMessage().contains("ignored the byte range"), download.getError().getMessage());
+        assertFalse(Files.exists(dir.resolve("file.bin")));
+    }
+
+    @Test
+    void droppedConnectionsContinueWhereTheyStopped() throws Exception {
+        DownloadEngine.Download download = download("/flaky/file.bin");
+        assertEquals(DownloadEngine.State.COMPLETED, download.getState(), () -> String.valueOf(download.getError()));
+        assertEquals(0, drops.get());
+        //the probe, one request per segment and one more for every dropped one
+        assertEquals(1 + download.getConnections() + 3, flakyRequests.get());
+        assertEquals(FILE_BYTES, download.getBytesDone());
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("file.bin")));
+    }
+
+    @Test
+    void fileTakingTheNameMeanwhileIsKept() throws Exception {
+        byte[] mine = "not the download".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), "/ranged/file.bin");
+        DownloadEngine.Download download = engine.start(url, DownloadEngine.DEFAULT_CONNECTIONS, remote -> {
+            //another program creates the file while the download runs
+            Path destination = dir.resolve(remote.getFileName());
+            Files.write(destination, mine);
+            return destination;
+        });
+        assertTrue(download.await(TIMEOUT_MILLIS), "download did not finish");
+        assertEquals(DownloadEngine.State.COMPLETED, download.getState(), () -> String.valueOf(download.getError()));
+        assertArrayEquals(mine, Files.readAllBytes(dir.resolve("file.bin")));
+        assertEquals(dir.resolve("file (1).bin"), download.getDestination());
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("file (1).bin")));
+    }
+
+    @Test
+    void missingFileFails() throws Exception {
+        DownloadEngine.Download download = download("/missing/file.bin");
+        assertEquals(DownloadEngine.State.FAILED, download.getState());
+        assertTrue(download.getError().getMessage().contains("404"), download.getError().getMessage());
+        assertNull(download.getDestination());
+        assertFalse(Files.exists(dir.resolve("file.bin")));
+    }
+
+    private DownloadEngine.Download download(String path) throws Exception {
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), path);
+        DownloadEngine.Download download = engine.start(url, DownloadEngine.DEFAULT_CONNECTIONS, remote -> dir.resolve(remote.getFileName()));
+        assertTrue(download.await(TIMEOUT_MILLIS), "download did not finish");
+        return download;
+    }
+
+    //acceptsRanges is what HEAD says, servesRanges whether GET honours it; dropping sends half a range and hangs up
+    private void serve(HttpExchange exchange, boolean acceptsRanges, boolean servesRanges, boolean dropping) throws IOException {
+        try (exchange) {
+            if (dropping) {
+                flakyRequests.incrementAndGet();
+            }
+            if (acceptsRanges) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            }
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(FILE_BYTES));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range != null ? RANGE.matcher(range) : null;
+            if (!servesRanges || matcher == null || !matcher.matches()) {
+                exchange.sendResponseHeaders(200, FILE_BYTES);
+                exchange.getResponseBody().write(content);
+                return;
+            }
+            int start = Integer.parseInt(matcher.group(1));
+            int end = Math.min(Integer.parseInt(matcher.group(2)), FILE_BYTES - 1);
+            int length = end - start + 1;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + FILE_BYTES);
+            exchange.sendResponseHeaders(206, length);
+            OutputStream body = exchange.getResponseBody();
+            if (dropping && drops.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                body.write(content, start, length / 2);
+                body.flush();
+                //closing short of the announced length drops the connection
+                return;
+            }
+            body.write(content, start, length);
+        } catch (IOException ex) {
+            //the dropped exchanges end here
+        }
+    }
+}
@@ -0,0 +1,206 @@
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.table.DefaultTableModel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes download histories through DownloadJournal and loads them back after the crashes it has
+ * to survive: a record torn at the tail, a record whose checksum does not match and a compaction
+ * cut short before or after its snapshot reached the disk.
+ */
+class DownloadJournalTest {
+
+    private static final String BASE_NAME = "downloads";
+
+    @TempDir
+    Path dir;
+
+    //attached journals, closed by closeAll()
+    private final List<DownloadJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void stop() {
+        closeAll();
+    }
+
+    @Test
+    void changesAreReplayed() throws IOException {
+        DefaultTableModel model = journaled();
+        model.addRow(row("a", 1));
+        model.addRow(row("b", 2));
+        model.addRow(row("c", 3));
+        model.setValueAt("B", 1, 0);
+        model.removeRow(0);
+        closeAll();
+        assertRows(model, load());
+    }
+
+    @Test
+    void tornTailIsDroppedAndOverwritten() throws IOException {
+        DefaultTableModel model = journaled();
+        model.addRow(row("a", 1));
+        model.addRow(row("b", 2));
+        closeAll();
+        //a record cut short by a crash: its length promises more bytes than follow
+        Files.write(journal(0), new byte[]{0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+        assertRows(model, load());
+
+        //new records follow the last complete one, not the torn bytes
+        DownloadJournal journal = new DownloadJournal(dir, BASE_NAME);
+        DefaultTableModel reloaded = new DefaultTableModel(0, 2);
+        for (Object[] values : journal.load(null)) {
+            reloaded.addRow(values);
+        }
+        journal.attach(reloaded);
+        reloaded.addRow(row("c", 3));
+        journal.close();
+        assertRows(reloaded, load());
+    }
+
+    @Test
+    void recordWithWrongChecksumEndsTheReplay() throws IOException {
+        DefaultTableModel model = journaled();
+        model.addRow(row("a", 1));
+        model.addRow(row("b", 2));
+        closeAll();
+        //the last four bytes are the checksum of the last record
+        byte[] bytes = Files.readAllBytes(journal(0));
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(journal(0), bytes);
+        List<Object[]> rows = load();
+        assertEquals(1, rows.size());
+        assertArrayEquals(row("a", 1), rows.get(0));
+    }
+
+    @Test
+    void compactionSwitchesToNewGeneration() throws IOException {
+        DefaultTableModel model = journaled();
+        for (int i = 0; i < 50; i++) {
+            model.addRow(row("r" + i, i));
+        }
+        //a whole-table change cannot be journaled and writes a snapshot instead
+        model.fireTableDataChanged();
+        model.setValueAt("changed", 10, 0);
+        model.removeRow(20);
+        closeAll();
+        assertTrue(Files.exists(dir.resolve(BASE_NAME + ".snapshot")));
+        assertFalse(Files.exists(journal(0)));
+        assertTrue(Files.exists(journal(1)));
+        assertRows(model, load());
+    }
+
+    @Test
+    void crashBeforeSnapshotWasWritten() throws IOException {
+        DefaultTableModel model = journaled();
+        for (int i = 0; i < 50; i++) {
+            model.addRow(row("r" + i, i));
+        }
+        closeAll();
+        Path oldJournal = Files.copy(journal(0), dir.resolve("old.journal"));
+        reopen(model);
+        model.fireTableDataChanged();
+        model.addRow(row("after", 99));
+        closeAll();
+        //generation 1 was started but its snapshot never reached the disk, so journal 0 was kept
+        Files.delete(dir.resolve(BASE_NAME + ".snapshot"));
+        Files.move(oldJournal, journal(0));
+        assertRows(model, load());
+    }
+
+    @Test
+    void crashBetweenSnapshotAndPruning() throws IOException {
+        DefaultTableModel model = journaled();
+        for (int i = 0; i < 50; i++) {
+            model.addRow(row("r" + i, i));
+        }
+        closeAll();
+        Path oldJournal = Files.copy(journal(0), dir.resolve("old.journal"));
+        reopen(model);
+        model.fireTableDataChanged();
+        model.removeRow(0);
+        closeAll();
+        //the snapshot of generation 1 is in place but journal 0 was never deleted
+        Files.move(oldJournal, journal(0));
+        assertRows(model, load());
+        assertFalse(Files.exists(journal(0)), "older journal was not cleaned up");
+    }
+
+    @Test
+    void firstPageMatchesTheLoadedRows() throws IOException {
+        DefaultTableModel model = journaled();
+        for (int i = 0; i < 300; i++) {
+            model.addRow(row("r" + i, i));
+        }
+        model.fireTableDataChanged();
+        model.removeRow(5);
+        model.insertRow(0, row("inserted", -1));
+        model.setValueAt("changed", 3, 0);
+        model.removeRow(250);
+        closeAll();
+        List<List<Object[]>> pages = new ArrayList<>();
+        List<Object[]> rows = new DownloadJournal(dir, BASE_NAME).load(null, 100, pages::add);
+        assertRows(model, rows);
+        assertEquals(1, pages.size());
+        assertEquals(100, pages.get(0).size());
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(rows.get(i), pages.get(0).get(i), "row " + i);
+        }
+    }
+
+    // --- Helpers ---
+
+    private DefaultTableModel journaled() throws IOException {
+        DefaultTableModel model = new DefaultTableModel(0, 2);
+        reopen(model);
+        return model;
+    }
+
+    //attaches a new journal to model, which must hold what is on disk
+    private void reopen(DefaultTableModel model) throws IOException {
+        DownloadJournal journal = new DownloadJournal(dir, BASE_NAME);
+        journal.load(null);
+        journal.attach(model);
+        journals.add(journal);
+    }
+
+    private void closeAll() {
+        for (DownloadJournal journal : journals) {
+            journal.close();
+        }
+        journals.clear();
+    }
+
+    private List<Object[]> load() throws IOException {
+        return new DownloadJournal(dir, BASE_NAME).load(null);
+    }
+
+    private Path journal(long generation) {
+        return dir.resolve(BASE_NAME + "." + generation + ".journal");
+    }
+
+    private static Object[] row(String name, long size) {
+        return new Object[]{name, size};
+    }
+
+    private static void assertRows(DefaultTableModel expected, List<Object[]> actual) {
+        assertEquals(expected.getRowCount(), actual.size());
+        for (int row = 0; row < actual.size(); row++) {
+            for (int column = 0; column < expected.getColumnCount(); column++) {
+                assertEquals(expected.getValueAt(row, column), actual.get(row)[column], "row " + row + ", column " + column);
+            }
+        }
+    }
+}